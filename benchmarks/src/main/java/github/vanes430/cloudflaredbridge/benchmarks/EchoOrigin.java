@@ -0,0 +1,59 @@
+package github.vanes430.cloudflaredbridge.benchmarks;
+
+import github.vanes430.cloudflaredbridge.common.BridgeUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Plain blocking echo server on 127.0.0.1, one thread per connection, as the origin behind the relay
+final class EchoOrigin implements Closeable {
+
+    private final ServerSocket server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(BridgeUtils.daemonThreadFactory("Bench-Echo"));
+
+    EchoOrigin() throws IOException {
+        this.server = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+        executor.execute(this::acceptLoop);
+    }
+
+    InetSocketAddress getAddress() {
+        return (InetSocketAddress) server.getLocalSocketAddress();
+    }
+
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                executor.execute(() -> echo(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private static void echo(Socket socket) {
+        try (socket; InputStream in = socket.getInputStream(); OutputStream out = socket.getOutputStream()) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        executor.shutdownNow();
+    }
+}
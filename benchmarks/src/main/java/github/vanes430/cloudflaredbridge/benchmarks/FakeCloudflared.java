@@ -0,0 +1,70 @@
+package github.vanes430.cloudflaredbridge.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+// Builds a POSIX sh stand-in for the cloudflared binary. It prints the same startup and connection lines the
+// log parser looks for, registers its connections after a delay, can emit origin errors at a fixed rate or
+// crash with a given exit code, and drains for a while on SIGTERM like cloudflared's grace period.
+final class FakeCloudflared {
+
+    private static final int TICK_MILLIS = 100;
+
+    int readyDelayMillis = 200;
+    int haConnections = 4;
+    int crashAfterMillis;
+    int exitCode = 1;
+    int errorLinesPerSecond;
+    int drainMillis = 300;
+    int paddingBytes;
+
+    byte[] build(String version) {
+        StringBuilder script = new StringBuilder();
+        script.append("#!/bin/sh\n")
+                .append("# Fake cloudflared ").append(version).append(" for the CloudflaredBridge lifecycle harness\n")
+                .append("TS=$(date -u +%Y-%m-%dT%H:%M:%SZ)\n")
+                .append("echo \"$TS INF Starting tunnel tunnelID=6f2c1d0e-3b4a-4c5d-8e9f-0a1b2c3d4e5f\"\n")
+                .append("echo \"$TS INF Version ").append(version).append("\"\n")
+                .append("echo \"$TS INF Settings: map[$*]\"\n")
+                .append("trap 'echo \"$TS INF Initiating graceful shutdown due to signal terminated ...\"; sleep ")
+                .append(seconds(drainMillis)).append("; exit 0' TERM INT\n")
+                .append("echo \"$TS INF Initial protocol quic\"\n")
+                .append("sleep ").append(seconds(readyDelayMillis)).append('\n')
+                .append("i=0\n")
+                .append("while [ $i -lt ").append(haConnections).append(" ]; do\n")
+                .append("  echo \"$TS INF Registered tunnel connection connIndex=$i connection=8d3f5c21-0a7e-4b6d-92f1-5e4c3b2a1d0$i")
+                .append(" event=0 ip=198.41.200.13 location=ams08 protocol=quic\" >&2\n")
+                .append("  i=$((i+1))\n")
+                .append("done\n")
+                .append("elapsed=0\n")
+                .append("while true; do\n")
+                .append("  sleep ").append(seconds(TICK_MILLIS)).append('\n')
+                .append("  elapsed=$((elapsed+").append(TICK_MILLIS).append("))\n");
+        if (crashAfterMillis > 0) {
+            script.append("  if [ $elapsed -ge ").append(crashAfterMillis).append(" ]; then\n")
+                    .append("    echo \"$TS ERR Serve tunnel error error=\\\"fatal: simulated crash\\\" connIndex=0\" >&2\n")
+                    .append("    exit ").append(exitCode).append('\n')
+                    .append("  fi\n");
+        }
+        int linesPerTick = errorLinesPerSecond * TICK_MILLIS / 1000;
+        if (linesPerTick > 0) {
+            script.append("  j=0\n")
+                    .append("  while [ $j -lt ").append(linesPerTick).append(" ]; do\n")
+                    .append("    echo \"$TS ERR  error=\\\"Unable to reach the origin service. The service may be down or it may not be")
+                    .append(" responding to traffic from cloudflared: dial tcp [::1]:25565: connect: connection refused\\\"")
+                    .append(" connIndex=$((j % ").append(haConnections).append(")) event=1 ingressRule=0 originService=tcp://localhost:25565\"\n")
+                    .append("    j=$((j+1))\n")
+                    .append("  done\n");
+        }
+        script.append("done\n");
+        // Never reached by the shell; makes the asset as large as a real build for download timing
+        while (script.length() < paddingBytes) {
+            script.append('#').append("x".repeat(1022)).append('\n');
+        }
+        return script.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String seconds(int millis) {
+        return String.format(Locale.ROOT, "%.3f", millis / 1000.0);
+    }
+}
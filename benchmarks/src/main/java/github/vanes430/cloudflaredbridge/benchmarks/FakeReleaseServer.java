@@ -0,0 +1,190 @@
+package github.vanes430.cloudflaredbridge.benchmarks;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import github.vanes430.cloudflaredbridge.common.BridgeUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Local stand-in for the GitHub releases API on 127.0.0.1: the latest release JSON (with ETag revalidation) whose
+// notes carry each asset's SHA-256, and the assets themselves with Range support. Every response is throttled
+// to bytesPerSecond per connection, 0 for no limit.
+final class FakeReleaseServer implements Closeable {
+
+    private final String version;
+    private final Map<String, byte[]> assets;
+    private final Map<String, String> hashes = new LinkedHashMap<>();
+    private final long bytesPerSecond;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicInteger releaseRequests = new AtomicInteger();
+    private final AtomicInteger assetRequests = new AtomicInteger();
+    private final AtomicLong bytesServed = new AtomicLong();
+    private final byte[] releaseJson;
+    private final String etag;
+
+    FakeReleaseServer(String version, Map<String, byte[]> assets, long bytesPerSecond) throws IOException {
+        this.version = version;
+        this.assets = assets;
+        this.bytesPerSecond = bytesPerSecond;
+        for (Map.Entry<String, byte[]> asset : assets.entrySet()) {
+            hashes.put(asset.getKey(), sha256(asset.getValue()));
+        }
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.releaseJson = buildReleaseJson();
+        this.etag = "\"" + sha256(releaseJson) + "\"";
+        this.executor = Executors.newCachedThreadPool(BridgeUtils.daemonThreadFactory("Harness-HTTP"));
+        server.setExecutor(executor);
+        server.createContext("/releases/latest", this::serveRelease);
+        server.createContext("/download/", this::serveAsset);
+        server.start();
+    }
+
+    String getApiUrl() {
+        return baseUrl() + "/releases/latest";
+    }
+
+    String getHash(String assetName) {
+        return hashes.get(assetName);
+    }
+
+    int getReleaseRequests() {
+        return releaseRequests.get();
+    }
+
+    int getAssetRequests() {
+        return assetRequests.get();
+    }
+
+    long getBytesServed() {
+        return bytesServed.get();
+    }
+
+    private String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    // The fields ReleaseMetadata reads, in the same places as the GitHub API reply
+    private byte[] buildReleaseJson() {
+        StringBuilder body = new StringBuilder("Harness build of cloudflared ").append(version).append(".\n\nSHA256 Checksums:\n```\n");
+        JsonArray assetList = new JsonArray();
+        for (Map.Entry<String, String> hash : hashes.entrySet()) {
+            body.append(hash.getKey()).append(": ").append(hash.getValue()).append('\n');
+            JsonObject asset = new JsonObject();
+            asset.addProperty("name", hash.getKey());
+            asset.addProperty("size", assets.get(hash.getKey()).length);
+            asset.addProperty("browser_download_url", baseUrl() + "/download/" + version + "/" + hash.getKey());
+            assetList.add(asset);
+        }
+        body.append("```\n");
+        JsonObject release = new JsonObject();
+        release.addProperty("tag_name", version);
+        release.addProperty("name", version);
+        release.add("assets", assetList);
+        release.addProperty("body", body.toString());
+        return release.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void serveRelease(HttpExchange exchange) throws IOException {
+        releaseRequests.incrementAndGet();
+        try {
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, releaseJson.length);
+            write(exchange.getResponseBody(), releaseJson, 0, releaseJson.length);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void serveAsset(HttpExchange exchange) throws IOException {
+        assetRequests.incrementAndGet();
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String name = path.substring(path.lastIndexOf('/') + 1);
+            byte[] asset = assets.get(name);
+            if (asset == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("ETag", "\"" + hashes.get(name) + "\"");
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (range == null || !range.startsWith("bytes=")) {
+                exchange.sendResponseHeaders(200, asset.length);
+                write(exchange.getResponseBody(), asset, 0, asset.length);
+                return;
+            }
+            String[] bounds = range.substring(6).split("-", 2);
+            long from = Long.parseLong(bounds[0]);
+            long to = bounds.length > 1 && !bounds[1].isEmpty() ? Math.min(Long.parseLong(bounds[1]), asset.length - 1) : asset.length - 1;
+            if (from > to) {
+                exchange.getResponseHeaders().set("Content-Range", "bytes */" + asset.length);
+                exchange.sendResponseHeaders(416, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + asset.length);
+            exchange.sendResponseHeaders(206, to - from + 1);
+            write(exchange.getResponseBody(), asset, (int) from, (int) (to - from + 1));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void write(OutputStream out, byte[] data, int offset, int length) throws IOException {
+        long startedAt = System.nanoTime();
+        int sent = 0;
+        while (sent < length) {
+            int slice = Math.min(16 * 1024, length - sent);
+            out.write(data, offset + sent, slice);
+            sent += slice;
+            bytesServed.addAndGet(slice);
+            if (bytesPerSecond > 0) {
+                long due = startedAt + sent * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted", e);
+                    }
+                }
+            }
+        }
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            return BridgeUtils.toHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
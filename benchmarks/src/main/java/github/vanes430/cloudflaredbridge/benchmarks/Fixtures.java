@@ -0,0 +1,79 @@
+package github.vanes430.cloudflaredbridge.benchmarks;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+// Inputs for the benchmarks. Text fixtures are checked in under resources/fixtures; binaries are generated
+// from a fixed seed instead of committing tens of MB, so every run hashes and unpacks the same bytes.
+final class Fixtures {
+
+    private static final long SEED = 0x436c6f7564L;
+
+    private Fixtures() {
+    }
+
+    static String text(String name) {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing fixture " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static List<String> lines(String name) {
+        return Arrays.asList(text(name).split("\n"));
+    }
+
+    // Compresses about as well as a Go executable (roughly 2.5:1): runs of repeated bytes mixed with noise
+    static byte[] binary(int sizeMb) {
+        byte[] data = new byte[sizeMb << 20];
+        SplittableRandom random = new SplittableRandom(SEED);
+        int i = 0;
+        while (i < data.length) {
+            int run = Math.min(data.length - i, 1 + random.nextInt(64));
+            if (random.nextInt(3) == 0) {
+                Arrays.fill(data, i, i + run, (byte) random.nextInt(256));
+            } else {
+                for (int j = i; j < i + run; j++) {
+                    data[j] = (byte) random.nextInt(256);
+                }
+            }
+            i += run;
+        }
+        return data;
+    }
+
+    // Same layout as the macOS release archives: a cloudflared entry next to the docs
+    static byte[] tarGz(byte[] binary) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(binary.length);
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new GzipCompressorOutputStream(bytes))) {
+            addEntry(tar, "LICENSE", text("release-body.md").getBytes(StandardCharsets.UTF_8));
+            addEntry(tar, "cloudflared", binary);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void addEntry(TarArchiveOutputStream tar, String name, byte[] content) throws IOException {
+        TarArchiveEntry entry = new TarArchiveEntry(name);
+        entry.setSize(content.length);
+        entry.setMode(0755);
+        tar.putArchiveEntry(entry);
+        tar.write(content);
+        tar.closeArchiveEntry();
+    }
+}
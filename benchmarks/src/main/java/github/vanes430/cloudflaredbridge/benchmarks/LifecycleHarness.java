@@ -0,0 +1,390 @@
+package github.vanes430.cloudflaredbridge.benchmarks;
+
+import com.google.gson.GsonBuilder;
+import github.vanes430.cloudflaredbridge.common.BinaryInstaller;
+import github.vanes430.cloudflaredbridge.common.BridgeLogger;
+import github.vanes430.cloudflaredbridge.common.CloudflaredManager;
+import github.vanes430.cloudflaredbridge.common.PlatformUtils;
+import github.vanes430.cloudflaredbridge.common.ReleaseMetadata;
+import github.vanes430.cloudflaredbridge.common.Tunnel;
+import github.vanes430.cloudflaredbridge.common.TunnelState;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// End-to-end lifecycle run of CloudflaredManager on localhost only: releases come from FakeReleaseServer and every
+// tunnel is a FakeCloudflared script. Each scenario measures init, install, time-to-ready and shutdown, checks the
+// outcome, and the results are printed as JSON. Exits with 1 if any check failed.
+//
+//   java -cp benchmarks/target/benchmarks.jar github.vanes430.cloudflaredbridge.benchmarks.LifecycleHarness \
+//       [--scenarios baseline,many-tunnels,slow-download,crash-storm] [--tunnels 60] [--out result.json] [--verbose]
+public final class LifecycleHarness {
+
+    private static final String VERSION = "2099.1.0";
+    private static final long READY_TIMEOUT_SECONDS = 120;
+
+    private final boolean verbose;
+
+    private LifecycleHarness(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> scenarios = Arrays.asList("baseline", "many-tunnels", "slow-download", "crash-storm");
+        int tunnels = 60;
+        Path out = null;
+        boolean verbose = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--scenarios":
+                    scenarios = Arrays.asList(args[++i].split(","));
+                    break;
+                case "--tunnels":
+                    tunnels = Integer.parseInt(args[++i]);
+                    break;
+                case "--out":
+                    out = Paths.get(args[++i]);
+                    break;
+                case "--verbose":
+                    verbose = true;
+                    break;
+                default:
+                    System.err.println("Usage: LifecycleHarness [--scenarios a,b] [--tunnels N] [--out file.json] [--verbose]");
+                    System.exit(2);
+            }
+        }
+        if (PlatformUtils.getOS() == PlatformUtils.OS.WINDOWS) {
+            System.err.println("The fake cloudflared is a shell script; run the harness on Linux or macOS.");
+            System.exit(2);
+        }
+
+        LifecycleHarness harness = new LifecycleHarness(verbose);
+        List<Map<String, Object>> results = new ArrayList<>();
+        boolean passed = true;
+        for (String name : scenarios) {
+            Scenario scenario = scenario(name.trim(), tunnels);
+            Map<String, Object> result;
+            try {
+                result = harness.run(scenario);
+            } catch (Exception | LinkageError e) {
+                // A broken setup (e.g. a class missing from the jar) fails its scenario, not the whole report
+                e.printStackTrace();
+                result = new LinkedHashMap<>();
+                result.put("name", scenario.name);
+                result.put("passed", false);
+                result.put("failures", Collections.singletonList("Scenario could not run: " + e));
+            }
+            passed &= Boolean.TRUE.equals(result.get("passed"));
+            results.add(result);
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("timestamp", Instant.now().toString());
+        report.put("java", System.getProperty("java.version"));
+        report.put("os", System.getProperty("os.name") + " " + System.getProperty("os.arch"));
+        report.put("cpus", Runtime.getRuntime().availableProcessors());
+        report.put("passed", passed);
+        report.put("scenarios", results);
+        String json = new GsonBuilder().setPrettyPrinting().create().toJson(report);
+        if (out != null) {
+            Files.write(out, json.getBytes(StandardCharsets.UTF_8));
+        }
+        System.out.println(json);
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static Scenario scenario(String name, int manyTunnels) {
+        Scenario scenario = new Scenario(name);
+        switch (name) {
+            case "baseline":
+                scenario.tunnels = 4;
+                break;
+            case "many-tunnels":
+                scenario.tunnels = manyTunnels;
+                scenario.cloudflared.readyDelayMillis = 300;
+                scenario.cloudflared.errorLinesPerSecond = 20;
+                break;
+            case "slow-download":
+                scenario.tunnels = 2;
+                scenario.cloudflared.paddingBytes = 24 << 20;
+                scenario.bytesPerSecond = 4L << 20;
+                break;
+            case "crash-storm":
+                scenario.tunnels = 10;
+                scenario.cloudflared.crashAfterMillis = 500;
+                scenario.cloudflared.exitCode = 2;
+                scenario.crashLoopThreshold = 3;
+                scenario.expectedSevere = "Marked as crash-looping";
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown scenario " + name);
+        }
+        return scenario;
+    }
+
+    private Map<String, Object> run(Scenario scenario) throws Exception {
+        Map<String, Object> result = new LinkedHashMap<>();
+        List<String> failures = new ArrayList<>();
+        result.put("name", scenario.name);
+        result.put("tunnels", scenario.tunnels);
+
+        byte[] binary = scenario.cloudflared.build(VERSION);
+        Path root = Files.createTempDirectory("cloudflared-harness-" + scenario.name + "-");
+        RecordingLogger logger = new RecordingLogger(scenario.name, verbose);
+        try (FakeReleaseServer server = new FakeReleaseServer(VERSION, assets(binary), scenario.bytesPerSecond)) {
+            writeConfig(root, scenario, server.getApiUrl());
+            CloudflaredManager manager = new CloudflaredManager(root, logger);
+
+            long initStarted = System.nanoTime();
+            manager.init().get(READY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            result.put("initMs", millisSince(initStarted));
+            result.put("installMs", logger.awaitMillis("Update check and install finished in "));
+            result.put("assetBytes", binary.length);
+            result.put("assetRequests", server.getAssetRequests());
+            Path installed = root.resolve("versions").resolve(VERSION).resolve("cloudflared");
+            if (!Files.exists(installed) || !Arrays.equals(Files.readAllBytes(installed), binary)) {
+                failures.add("installed binary does not match the served asset");
+            }
+
+            long startRequested = System.nanoTime();
+            List<Tunnel> tunnels = manager.start().get(READY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (tunnels.size() != scenario.tunnels) {
+                failures.add("started " + tunnels.size() + " of " + scenario.tunnels + " tunnels");
+            }
+            try {
+                CompletableFuture.allOf(tunnels.stream().map(Tunnel::getReadyFuture).toArray(CompletableFuture[]::new))
+                        .get(READY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                result.put("allReadyMs", millisSince(startRequested));
+            } catch (TimeoutException e) {
+                failures.add("not every tunnel was ready within " + READY_TIMEOUT_SECONDS + "s");
+            }
+            List<Long> readyMillis = tunnels.stream()
+                    .filter(t -> t.getTimeToReadyMillis() >= 0)
+                    .map(t -> t.getTimeToLaunchMillis() + t.getTimeToReadyMillis())
+                    .sorted()
+                    .collect(Collectors.toList());
+            result.put("readyP50Ms", percentile(readyMillis, 50));
+            result.put("readyP95Ms", percentile(readyMillis, 95));
+            result.put("readyMaxMs", percentile(readyMillis, 100));
+
+            if (scenario.cloudflared.crashAfterMillis > 0) {
+                long stormStarted = System.nanoTime();
+                boolean parked = waitFor(() -> manager.getTunnels().stream().allMatch(t -> t.getState() == TunnelState.CRASH_LOOP),
+                        READY_TIMEOUT_SECONDS);
+                result.put("crashLoopParkedMs", parked ? millisSince(stormStarted) : -1);
+                int restarts = manager.getTunnels().stream().mapToInt(Tunnel::getRestartCount).sum();
+                result.put("restarts", restarts);
+                if (!parked) {
+                    failures.add("crashing tunnels were not all parked in CRASH_LOOP");
+                }
+                if (restarts > scenario.tunnels * scenario.crashLoopThreshold) {
+                    failures.add(restarts + " restarts exceed the crash-loop threshold");
+                }
+            }
+
+            long shutdownStarted = System.nanoTime();
+            manager.shutdown();
+            result.put("shutdownMs", millisSince(shutdownStarted));
+        } finally {
+            int leaked = reapLeftovers(root);
+            result.put("leakedProcesses", leaked);
+            if (leaked > 0) {
+                failures.add(leaked + " cloudflared process(es) still running after shutdown");
+            }
+            deleteTree(root);
+        }
+
+        result.put("severeLogs", logger.getErrors().size());
+        for (String error : logger.getErrors()) {
+            if (scenario.expectedSevere == null || !error.contains(scenario.expectedSevere)) {
+                failures.add(error);
+            }
+        }
+        result.put("passed", failures.isEmpty());
+        result.put("failures", failures);
+        return result;
+    }
+
+    // Every asset name cloudflared publishes, so the manager finds its platform's one; .tgz assets wrap the script
+    private static Map<String, byte[]> assets(byte[] binary) {
+        Map<String, byte[]> assets = new LinkedHashMap<>();
+        byte[] archive = null;
+        for (String name : ReleaseMetadata.indexHashes(Fixtures.text("release-body.md")).keySet()) {
+            if (BinaryInstaller.isArchive(name)) {
+                archive = archive != null ? archive : Fixtures.tarGz(binary);
+                assets.put(name, archive);
+            } else {
+                assets.put(name, binary);
+            }
+        }
+        return assets;
+    }
+
+    private static void writeConfig(Path root, Scenario scenario, String apiUrl) throws IOException {
+        Map<String, Object> data = new LinkedHashMap<>();
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < scenario.tunnels; i++) {
+            tokens.add(String.format("harness-token-%04d", i));
+        }
+        data.put("tokenlist", tokens);
+
+        Map<String, Object> supervisor = new LinkedHashMap<>();
+        supervisor.put("backoff-base-seconds", 1);
+        supervisor.put("backoff-max-seconds", 2);
+        supervisor.put("crash-loop-threshold", scenario.crashLoopThreshold);
+        supervisor.put("crash-loop-window-seconds", 60);
+        data.put("supervisor", supervisor);
+
+        Map<String, Object> update = new LinkedHashMap<>();
+        update.put("sources", Collections.singletonList(Map.of("type", "github", "api-url", apiUrl)));
+        data.put("update", update);
+
+        data.put("metrics", Collections.singletonMap("enabled", false));
+        data.put("reload", Collections.singletonMap("watch", false));
+
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        try (Writer writer = Files.newBufferedWriter(root.resolve("config.yml"), StandardCharsets.UTF_8)) {
+            new Yaml(options).dump(data, writer);
+        }
+    }
+
+    // Kills whatever the scenario left behind (processes running a file under its root) and returns how many there were
+    private static int reapLeftovers(Path root) throws InterruptedException {
+        String rootPath = root.toString();
+        waitFor(() -> leftovers(rootPath).isEmpty(), 2);
+        List<ProcessHandle> leftovers = leftovers(rootPath);
+        leftovers.forEach(ProcessHandle::destroyForcibly);
+        return leftovers.size();
+    }
+
+    private static List<ProcessHandle> leftovers(String rootPath) {
+        return ProcessHandle.current().descendants()
+                .filter(ProcessHandle::isAlive)
+                .filter(p -> p.info().commandLine().map(c -> c.contains(rootPath)).orElse(false))
+                .collect(Collectors.toList());
+    }
+
+    private static boolean waitFor(BooleanSupplier condition, long timeoutSeconds) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(50);
+        }
+        return true;
+    }
+
+    private static long percentile(List<Long> sorted, int percentile) {
+        if (sorted.isEmpty()) {
+            return -1;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index)));
+    }
+
+    private static long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private static final class Scenario {
+        final String name;
+        final FakeCloudflared cloudflared = new FakeCloudflared();
+        int tunnels;
+        long bytesPerSecond;
+        int crashLoopThreshold = 5;
+        String expectedSevere;
+
+        Scenario(String name) {
+            this.name = name;
+        }
+    }
+
+    // Keeps the manager's messages so phases can be timed from its own "... in Xms" lines; severe messages
+    // count as scenario failures
+    private static final class RecordingLogger implements BridgeLogger {
+
+        private final String scenario;
+        private final boolean verbose;
+        private final List<String> messages = new CopyOnWriteArrayList<>();
+        private final List<String> errors = new CopyOnWriteArrayList<>();
+
+        RecordingLogger(String scenario, boolean verbose) {
+            this.scenario = scenario;
+            this.verbose = verbose;
+        }
+
+        @Override
+        public void info(String message) {
+            record("INFO", message);
+        }
+
+        @Override
+        public void warning(String message) {
+            record("WARN", message);
+        }
+
+        @Override
+        public void severe(String message) {
+            errors.add(message);
+            record("SEVERE", message);
+        }
+
+        private void record(String level, String message) {
+            messages.add(message);
+            if (verbose) {
+                System.err.println("[" + scenario + "] " + level + " " + message);
+            }
+        }
+
+        // The duration reported by the first message starting with prefix, or -1. Messages reach the logger from
+        // the manager's console thread, so this waits briefly for it to arrive.
+        long awaitMillis(String prefix) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+            do {
+                for (String message : messages) {
+                    if (message.startsWith(prefix)) {
+                        String rest = message.substring(prefix.length());
+                        return Long.parseLong(rest.substring(0, rest.indexOf("ms")));
+                    }
+                }
+                Thread.sleep(10);
+            } while (System.nanoTime() < deadline);
+            return -1;
+        }
+
+        List<String> getErrors() {
+            return errors;
+        }
+    }
+}
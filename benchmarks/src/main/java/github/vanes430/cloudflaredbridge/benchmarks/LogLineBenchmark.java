@@ -0,0 +1,65 @@
+package github.vanes430.cloudflaredbridge.benchmarks;
+
+import github.vanes430.cloudflaredbridge.common.CloudflaredLogParser;
+import github.vanes430.cloudflaredbridge.common.LogRingBuffer;
+import github.vanes430.cloudflaredbridge.common.Tunnel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// What the log pump does per line of cloudflared output, replayed from fixtures/cloudflared.log: a startup
+// followed by a reconnect storm with origin errors and 429s. Scores are per line.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogLineBenchmark {
+
+    private static final int LINES = 400;
+
+    private String[] lines;
+    private CloudflaredLogParser parser;
+    private LogRingBuffer buffer;
+
+    @Setup
+    public void setup() {
+        List<String> fixture = Fixtures.lines("cloudflared.log");
+        if (fixture.size() != LINES) {
+            throw new IllegalStateException("cloudflared.log has " + fixture.size() + " lines, expected " + LINES);
+        }
+        lines = fixture.toArray(new String[0]);
+        parser = new CloudflaredLogParser(new Tunnel("benchmark-token", 0, 0, 200));
+        buffer = new LogRingBuffer(200);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void parseLevel(Blackhole blackhole) {
+        for (String line : lines) {
+            blackhole.consume(CloudflaredLogParser.parseLevel(line));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void parseAndBuffer() {
+        for (String line : lines) {
+            parser.accept(line);
+            buffer.add(line);
+        }
+    }
+}
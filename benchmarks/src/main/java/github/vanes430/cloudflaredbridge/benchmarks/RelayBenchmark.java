@@ -0,0 +1,141 @@
+package github.vanes430.cloudflaredbridge.benchmarks;
+
+import github.vanes430.cloudflaredbridge.common.BridgeLogger;
+import github.vanes430.cloudflaredbridge.common.OriginRelay;
+import github.vanes430.cloudflaredbridge.common.RelayRoute;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+// Echo round trips over loopback, straight to a local echo origin or through the origin relay, so the
+// relay's added latency is the difference between the two `target` values. roundTrip reuses one connection
+// per thread; connect opens a fresh one each time (accept, origin connect, first byte, close).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RelayBenchmark {
+
+    @Param({"direct", "relay", "relay-proxy-v2"})
+    public String target;
+
+    private EchoOrigin origin;
+    private OriginRelay relay;
+    private InetSocketAddress address;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        origin = new EchoOrigin();
+        if (target.equals("direct")) {
+            address = origin.getAddress();
+            return;
+        }
+        // With a PROXY header the echo origin sends it back first; Client skips it once per connection
+        RelayRoute route = new RelayRoute("bench", "127.0.0.1", 0, "127.0.0.1", origin.getAddress().getPort(),
+                target.equals("relay-proxy-v2") ? 2 : 0);
+        relay = new OriginRelay(Collections.singletonList(route), 64 * 1024, 5000, new BridgeLogger() {
+            @Override
+            public void info(String message) {
+            }
+
+            @Override
+            public void warning(String message) {
+                System.err.println(message);
+            }
+
+            @Override
+            public void severe(String message) {
+                System.err.println(message);
+            }
+        });
+        address = relay.getAddress(route);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (relay != null) {
+            relay.close();
+        }
+        origin.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+
+        @Param({"64", "16384"})
+        public int payloadBytes;
+
+        private Socket socket;
+        private byte[] payload;
+        private byte[] reply;
+
+        @Setup(Level.Trial)
+        public void connect(RelayBenchmark benchmark) throws IOException {
+            payload = new byte[payloadBytes];
+            reply = new byte[payloadBytes];
+            socket = benchmark.open();
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    @Benchmark
+    public byte[] roundTrip(Client client) throws IOException {
+        client.socket.getOutputStream().write(client.payload);
+        readFully(client.socket.getInputStream(), client.reply);
+        return client.reply;
+    }
+
+    @Benchmark
+    public int connect() throws IOException {
+        try (Socket socket = open()) {
+            socket.getOutputStream().write(1);
+            return socket.getInputStream().read();
+        }
+    }
+
+    private Socket open() throws IOException {
+        Socket socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(address);
+        if (target.equals("relay-proxy-v2")) {
+            // Signature, version/command, family, length, then 12 address bytes for TCP over IPv4
+            readFully(socket.getInputStream(), new byte[28]);
+        }
+        return socket;
+    }
+
+    private static void readFully(InputStream in, byte[] buffer) throws IOException {
+        int offset = 0;
+        while (offset < buffer.length) {
+            int read = in.read(buffer, offset, buffer.length - offset);
+            if (read < 0) {
+                throw new EOFException("Origin closed after " + offset + " of " + buffer.length + " bytes");
+            }
+            offset += read;
+        }
+    }
+}
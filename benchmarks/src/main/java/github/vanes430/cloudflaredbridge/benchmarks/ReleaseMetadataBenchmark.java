@@ -0,0 +1,59 @@
+package github.vanes430.cloudflaredbridge.benchmarks;
+
+import github.vanes430.cloudflaredbridge.common.BridgeUtils;
+import github.vanes430.cloudflaredbridge.common.ReleaseMetadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringReader;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Release metadata handling on every update check: the GitHub API reply (fixtures/release.json, shaped like
+// the real cloudflared release with all 26 assets), the hash lines in its notes, and a mirror's sha256sum.txt.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReleaseMetadataBenchmark {
+
+    private String releaseJson;
+    private String releaseBody;
+    private String sha256Sums;
+
+    @Setup
+    public void setup() {
+        releaseJson = Fixtures.text("release.json");
+        releaseBody = Fixtures.text("release-body.md");
+        StringBuilder sums = new StringBuilder();
+        for (Map.Entry<String, String> entry : ReleaseMetadata.indexHashes(releaseBody).entrySet()) {
+            sums.append(entry.getValue()).append("  ").append(entry.getKey()).append('\n');
+        }
+        sha256Sums = sums.toString();
+    }
+
+    @Benchmark
+    public ReleaseMetadata parseReleaseJson() throws Exception {
+        return ReleaseMetadata.parse(new StringReader(releaseJson));
+    }
+
+    @Benchmark
+    public Map<String, String> indexHashesFromBody() {
+        return ReleaseMetadata.indexHashes(releaseBody);
+    }
+
+    @Benchmark
+    public Map<String, String> parseSha256Sums() {
+        return BridgeUtils.parseSha256Sums(sha256Sums);
+    }
+}
@@ -0,0 +1,52 @@
+package github.vanes430.cloudflaredbridge.benchmarks;
+
+import github.vanes430.cloudflaredbridge.common.BridgeUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Hashing an installed binary, as done when no manifest vouches for it. 40 MB is about the size of a
+// current linux-amd64 build; the file stays in the page cache, so this measures the digest, not the disk.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Sha256Benchmark {
+
+    @Param({"1", "16", "40"})
+    public int sizeMb;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        file = Files.createTempFile("cloudflared-bench-", ".bin");
+        Files.write(file, Fixtures.binary(sizeMb));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public String calculateSha256() throws Exception {
+        return BridgeUtils.calculateSha256(file);
+    }
+}
@@ -0,0 +1,45 @@
+package github.vanes430.cloudflaredbridge.benchmarks;
+
+import github.vanes430.cloudflaredbridge.common.BinaryInstaller;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+// Unpacking the cloudflared entry from a macOS .tgz release asset, held in memory so only
+// gunzip and tar parsing are measured.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TarGzBenchmark {
+
+    @Param({"16", "40"})
+    public int sizeMb;
+
+    private byte[] archive;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        archive = Fixtures.tarGz(Fixtures.binary(sizeMb));
+    }
+
+    @Benchmark
+    public void extractBinary() throws Exception {
+        BinaryInstaller.extractBinary(new ByteArrayInputStream(archive), OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,95 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// A cloudflared process started by an earlier instance of the plugin and adopted through its ProcessHandle.
+// It is not our child, so there are no pipes (its output goes to its log file) and the exit code is unknown.
+public class AdoptedProcess extends Process {
+
+    private final ProcessHandle handle;
+
+    public AdoptedProcess(ProcessHandle handle) {
+        this.handle = handle;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return OutputStream.nullOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return InputStream.nullInputStream();
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        return InputStream.nullInputStream();
+    }
+
+    @Override
+    public int waitFor() throws InterruptedException {
+        try {
+            handle.onExit().get();
+        } catch (ExecutionException ignored) {
+        }
+        return exitValue();
+    }
+
+    @Override
+    public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            handle.onExit().get(timeout, unit);
+            return true;
+        } catch (ExecutionException e) {
+            return !handle.isAlive();
+        } catch (TimeoutException e) {
+            return false;
+        }
+    }
+
+    // Reported as -1 once the process is gone
+    @Override
+    public int exitValue() {
+        if (handle.isAlive()) {
+            throw new IllegalThreadStateException("process hasn't exited");
+        }
+        return -1;
+    }
+
+    @Override
+    public void destroy() {
+        handle.destroy();
+    }
+
+    @Override
+    public Process destroyForcibly() {
+        handle.destroyForcibly();
+        return this;
+    }
+
+    @Override
+    public boolean isAlive() {
+        return handle.isAlive();
+    }
+
+    @Override
+    public long pid() {
+        return handle.pid();
+    }
+
+    @Override
+    public ProcessHandle toHandle() {
+        return handle;
+    }
+
+    @Override
+    public CompletableFuture<Process> onExit() {
+        return handle.onExit().thenApply(h -> this);
+    }
+}
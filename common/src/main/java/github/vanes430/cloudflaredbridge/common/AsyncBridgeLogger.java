@@ -0,0 +1,319 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Console output off the calling thread. Messages go into a bounded lock-free queue and one daemon thread hands
+// them to the platform logger, cloudflared lines in batches. Forwarded cloudflared output is filtered by level per
+// tunnel, repeated lines are collapsed and at most max-lines-per-second are written; lines that don't fit the queue
+// or the budget are dropped and counted, so a reconnect storm never reaches the server's threads.
+public class AsyncBridgeLogger implements BridgeLogger {
+
+    private static final int BATCH_SIZE = 256;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long REPEAT_FLUSH_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final long DROP_REPORT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    // Console levels, lowest first; cloudflared's DBG/INF/WRN/ERR/FTL map onto them
+    private static final String[] LEVELS = {"debug", "info", "warn", "error", "off"};
+
+    private final BridgeLogger delegate;
+    private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Thread drainer;
+    private volatile boolean closed;
+
+    private volatile int capacity = 2048;
+    private volatile int defaultThreshold = rank("warn");
+    private volatile Map<Integer, Integer> tunnelThresholds = new HashMap<>();
+    private volatile TokenBucket budget = new TokenBucket(20, 20);
+    private volatile int linesPerSecond = 20;
+
+    private final AtomicLong forwarded = new AtomicLong();
+    private final AtomicLong collapsed = new AtomicLong();
+    private final AtomicLong droppedQueueFull = new AtomicLong();
+    private final AtomicLong droppedRateLimited = new AtomicLong();
+
+    // Drain thread only
+    private final Map<String, Repeat> repeats = new HashMap<>();
+    private final List<String> batch = new ArrayList<>();
+    private long reportedQueueFull;
+    private long reportedRateLimited;
+    private long lastDropReport = System.nanoTime();
+
+    public AsyncBridgeLogger(BridgeLogger delegate) {
+        this.delegate = delegate;
+        this.drainer = new Thread(this::drainLoop, "CloudflaredBridge-Console");
+        this.drainer.setDaemon(true);
+        this.drainer.start();
+    }
+
+    public void configure(BridgeConfig config) {
+        Map<Integer, Integer> thresholds = new HashMap<>();
+        for (Map.Entry<String, String> override : config.getConsoleTunnelLevels().entrySet()) {
+            String name = override.getKey().toLowerCase(Locale.ROOT);
+            try {
+                thresholds.put(Integer.parseInt(name.startsWith("tunnel-") ? name.substring(7) : name), rank(override.getValue()));
+            } catch (NumberFormatException e) {
+                warning("Ignoring console level for unknown tunnel '" + override.getKey() + "'; use tunnel-<number>.");
+            }
+        }
+        tunnelThresholds = thresholds;
+        defaultThreshold = rank(config.getConsoleLevel());
+        capacity = config.getConsoleQueueSize();
+        if (linesPerSecond != config.getConsoleMaxLinesPerSecond()) {
+            linesPerSecond = config.getConsoleMaxLinesPerSecond();
+            budget = new TokenBucket(linesPerSecond, linesPerSecond);
+        }
+    }
+
+    static boolean isLevel(String level) {
+        return rank(level) >= 0;
+    }
+
+    private static int rank(String level) {
+        for (int i = 0; i < LEVELS.length; i++) {
+            if (LEVELS[i].equals(level)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int rankOfLine(String cloudflaredLevel) {
+        if (cloudflaredLevel == null) {
+            return 1; // Continuation lines and plain output count as info
+        }
+        switch (cloudflaredLevel) {
+            case "DBG":
+                return 0;
+            case "WRN":
+                return 2;
+            case "ERR":
+            case "FTL":
+                return 3;
+            default:
+                return 1;
+        }
+    }
+
+    @Override
+    public void info(String message) {
+        offerPlugin(Entry.INFO, message);
+    }
+
+    @Override
+    public void warning(String message) {
+        offerPlugin(Entry.WARNING, message);
+    }
+
+    @Override
+    public void severe(String message) {
+        offerPlugin(Entry.SEVERE, message);
+    }
+
+    // The plugin's own messages are never filtered or dropped; after close() they are written directly
+    private void offerPlugin(int level, String message) {
+        if (closed) {
+            write(new Entry(level, null, message));
+            return;
+        }
+        queued.incrementAndGet();
+        queue.offer(new Entry(level, null, message));
+    }
+
+    // One line of cloudflared output from the log pump; cheap enough to run for every line
+    public void forward(Tunnel tunnel, String line) {
+        String level = CloudflaredLogParser.parseLevel(line);
+        Integer override = tunnelThresholds.get(tunnel.getIndex());
+        if (rankOfLine(level) < (override != null ? override : defaultThreshold) || closed) {
+            return;
+        }
+        // Reserve a slot first so the queue can never grow past its capacity
+        int size;
+        do {
+            size = queued.get();
+            if (size >= capacity) {
+                droppedQueueFull.incrementAndGet();
+                return;
+            }
+        } while (!queued.compareAndSet(size, size + 1));
+        // The console has its own timestamps
+        String text = level != null ? line.substring(line.indexOf(' ') + 1) : line;
+        queue.offer(new Entry(Entry.TUNNEL, tunnel.getName(), text));
+    }
+
+    public long getForwardedCount() {
+        return forwarded.get();
+    }
+
+    public long getCollapsedCount() {
+        return collapsed.get();
+    }
+
+    public long getDroppedQueueFullCount() {
+        return droppedQueueFull.get();
+    }
+
+    public long getDroppedRateLimitedCount() {
+        return droppedRateLimited.get();
+    }
+
+    public boolean isForwarding() {
+        if (defaultThreshold < rank("off")) {
+            return true;
+        }
+        for (int threshold : tunnelThresholds.values()) {
+            if (threshold < rank("off")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Writes whatever is still queued and stops the drain thread; later messages are written synchronously
+    public void close() {
+        closed = true;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join(TimeUnit.SECONDS.toMillis(2));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainLoop() {
+        while (true) {
+            boolean stopping = closed;
+            try {
+                do {
+                    drain();
+                } while (stopping && !queue.isEmpty());
+            } catch (RuntimeException e) {
+                // A failing console must not kill the thread; nothing sensible to log it to
+            }
+            if (stopping) {
+                return;
+            }
+            if (queue.isEmpty()) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    private void drain() {
+        long now = System.nanoTime();
+        Entry entry;
+        int taken = 0;
+        while (taken < BATCH_SIZE && (entry = queue.poll()) != null) {
+            queued.decrementAndGet();
+            taken++;
+            if (entry.level != Entry.TUNNEL) {
+                flushBatch();
+                write(entry);
+                continue;
+            }
+            Repeat repeat = repeats.computeIfAbsent(entry.source, key -> new Repeat());
+            if (entry.message.equals(repeat.message)) {
+                if (repeat.count++ == 0) {
+                    repeat.since = now;
+                }
+                collapsed.incrementAndGet();
+                continue;
+            }
+            flushRepeat(entry.source, repeat);
+            repeat.message = entry.message;
+            if (budget.tryAcquire() != 0) {
+                droppedRateLimited.incrementAndGet();
+                continue;
+            }
+            batch.add(format(entry.source, entry.message));
+            forwarded.incrementAndGet();
+        }
+        for (Map.Entry<String, Repeat> repeat : repeats.entrySet()) {
+            if (repeat.getValue().count > 0 && now - repeat.getValue().since >= REPEAT_FLUSH_NANOS) {
+                flushRepeat(repeat.getKey(), repeat.getValue());
+            }
+        }
+        flushBatch();
+        if (now - lastDropReport >= DROP_REPORT_NANOS || closed) {
+            reportDrops(now);
+        }
+    }
+
+    private void flushRepeat(String source, Repeat repeat) {
+        if (repeat.count > 0) {
+            batch.add("§8[" + source + "] §7last message repeated " + repeat.count + " time" + (repeat.count == 1 ? "" : "s"));
+            repeat.count = 0;
+        }
+    }
+
+    private void flushBatch() {
+        if (!batch.isEmpty()) {
+            delegate.write(new ArrayList<>(batch));
+            batch.clear();
+        }
+    }
+
+    private void reportDrops(long now) {
+        long queueFull = droppedQueueFull.get() - reportedQueueFull;
+        long rateLimited = droppedRateLimited.get() - reportedRateLimited;
+        lastDropReport = now;
+        if (queueFull + rateLimited == 0) {
+            return;
+        }
+        reportedQueueFull += queueFull;
+        reportedRateLimited += rateLimited;
+        delegate.warning("Dropped " + (queueFull + rateLimited) + " cloudflared log line(s) (queue full: " + queueFull
+                + ", over " + linesPerSecond + "/s: " + rateLimited + "). Full output: /cloudflared logs <tunnel>.");
+    }
+
+    private void write(Entry entry) {
+        switch (entry.level) {
+            case Entry.WARNING:
+                delegate.warning(entry.message);
+                break;
+            case Entry.SEVERE:
+                delegate.severe(entry.message);
+                break;
+            default:
+                delegate.info(entry.message);
+        }
+    }
+
+    private static String format(String source, String text) {
+        String color = text.startsWith("ERR") || text.startsWith("FTL") ? "§c" : text.startsWith("WRN") ? "§e" : "§7";
+        return "§8[" + source + "] " + color + text;
+    }
+
+    private static final class Entry {
+        static final int INFO = 0;
+        static final int WARNING = 1;
+        static final int SEVERE = 2;
+        static final int TUNNEL = 3;
+
+        final int level;
+        final String source;
+        final String message;
+
+        Entry(int level, String source, String message) {
+            this.level = level;
+            this.source = source;
+            this.message = message;
+        }
+    }
+
+    private static final class Repeat {
+        String message;
+        int count;
+        long since;
+    }
+}
@@ -0,0 +1,109 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// Installs a cloudflared release asset in a single pass: the asset stream is hashed while it is read,
+// .tgz assets are unpacked on the fly (only the cloudflared entry is kept), and the binary is written to
+// a temp file that is fsynced and atomically moved into place only once the asset hash has been verified.
+public class BinaryInstaller {
+
+    private static final String BINARY_ENTRY = "cloudflared";
+
+    public static Result install(InputStream asset, String assetName, String expectedHash, Path target) throws IOException {
+        MessageDigest assetDigest = newSha256();
+        MessageDigest binaryDigest = newSha256();
+        Path tmp = target.resolveSibling(target.getFileName() + ".download");
+
+        try (DigestInputStream in = new DigestInputStream(new BufferedInputStream(asset, 64 * 1024), assetDigest);
+             FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new DigestOutputStream(Channels.newOutputStream(channel), binaryDigest);
+            if (isArchive(assetName)) {
+                extractBinary(in, out);
+            } else {
+                in.transferTo(out);
+            }
+            // Consume whatever the archive reader left behind so the asset hash covers every byte
+            in.transferTo(OutputStream.nullOutputStream());
+            out.flush();
+            channel.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+
+        String assetHash = BridgeUtils.toHex(assetDigest.digest());
+        if (expectedHash != null && !assetHash.equalsIgnoreCase(expectedHash)) {
+            Files.deleteIfExists(tmp);
+            throw new IOException("Hash mismatch for " + assetName + " (Downloaded: " + assetHash + ", Expected: " + expectedHash + ")");
+        }
+
+        if (PlatformUtils.getOS() != PlatformUtils.OS.WINDOWS) {
+            tmp.toFile().setExecutable(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new Result(assetHash, BridgeUtils.toHex(binaryDigest.digest()));
+    }
+
+    public static boolean isArchive(String assetName) {
+        return assetName.endsWith(".tgz") || assetName.endsWith(".tar.gz");
+    }
+
+    // Copies the cloudflared entry of a .tar.gz stream to out, skipping every other entry
+    public static void extractBinary(InputStream tarGz, OutputStream out) throws IOException {
+        // Not closed here: closing would close the caller's stream before it is fully hashed
+        TarArchiveInputStream tar = new TarArchiveInputStream(new GzipCompressorInputStream(tarGz));
+        TarArchiveEntry entry;
+        while ((entry = tar.getNextTarEntry()) != null) {
+            String name = entry.getName();
+            String fileName = name.substring(name.lastIndexOf('/') + 1);
+            if (!entry.isDirectory() && fileName.equals(BINARY_ENTRY)) {
+                tar.transferTo(out);
+                return;
+            }
+        }
+        throw new IOException("Extraction failed: '" + BINARY_ENTRY + "' binary not found in archive.");
+    }
+
+    private static MessageDigest newSha256() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    public static class Result {
+        private final String assetHash;
+        private final String binaryHash;
+
+        public Result(String assetHash, String binaryHash) {
+            this.assetHash = assetHash;
+            this.binaryHash = binaryHash;
+        }
+
+        public String getAssetHash() {
+            return assetHash;
+        }
+
+        public String getBinaryHash() {
+            return binaryHash;
+        }
+    }
+}
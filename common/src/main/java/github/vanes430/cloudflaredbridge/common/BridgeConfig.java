@@ -0,0 +1,645 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class BridgeConfig {
+
+    public static final String PLACEHOLDER_TOKEN = "replace_with_your_token_here";
+
+    private final List<TokenEntry> tokens;
+    private final int defaultReplicas;
+    private final int replicaStaggerSeconds;
+    private final boolean cpuPinning;
+    private final int cpusPerReplica;
+    private final int startBurst;
+    private final double startRefillPerSecond;
+    private final int readyTimeoutSeconds;
+    private final int backoffBaseSeconds;
+    private final int backoffMaxSeconds;
+    private final int logBufferLines;
+    private final boolean supervisorEnabled;
+    private final int restartBackoffBaseSeconds;
+    private final int restartBackoffMaxSeconds;
+    private final int crashLoopThreshold;
+    private final int crashLoopWindowSeconds;
+    private final int releaseCacheTtlMinutes;
+    private final int downloadConnections;
+    private final int downloadChunkSizeMb;
+    private final int downloadRetries;
+    private final List<Map<String, Object>> releaseSources;
+    private final boolean rollingUpgrade;
+    private final String sharedCache;
+    private final boolean metricsEnabled;
+    private final int metricsPortRangeStart;
+    private final int metricsPortRangeEnd;
+    private final int metricsScrapeIntervalSeconds;
+    private final boolean watchConfig;
+    private final Map<String, LaunchProfile> profiles;
+    private final boolean resourceSamplingEnabled;
+    private final int resourceSampleIntervalSeconds;
+    private final int resourceHistorySize;
+    private final int maxRssMb;
+    private final int maxCpuPercent;
+    private final int breachSamples;
+    private final int shutdownTimeoutSeconds;
+    private final boolean adoptionEnabled;
+    private final boolean keepRunningOnReload;
+    private final String consoleLevel;
+    private final Map<String, String> consoleTunnelLevels;
+    private final int consoleMaxLinesPerSecond;
+    private final int consoleQueueSize;
+    private final boolean relayEnabled;
+    private final int relayBufferKb;
+    private final int relayConnectTimeoutSeconds;
+    private final List<RelayRoute> relayRoutes;
+    private final IngressConfig ingress;
+
+    private BridgeConfig(Map<String, Object> data) {
+        Map<String, Object> replicas = getSection(data, "replicas");
+        this.defaultReplicas = Math.max(1, getInt(replicas, "default", 1));
+        this.replicaStaggerSeconds = Math.max(0, getInt(replicas, "stagger-seconds", 2));
+        this.cpuPinning = getBoolean(replicas, "cpu-pinning", false);
+        this.cpusPerReplica = Math.max(1, getInt(replicas, "cpus-per-replica", 1));
+
+        List<TokenEntry> parsedTokens = new ArrayList<>();
+        Object list = data.get("tokenlist");
+        if (list instanceof List) {
+            for (Object entry : (List<?>) list) {
+                if (entry instanceof Map) {
+                    Map<String, Object> spec = toStringKeyMap((Map<?, ?>) entry);
+                    Object token = spec.get("token");
+                    Object profile = spec.get("profile");
+                    if (token != null) {
+                        parsedTokens.add(new TokenEntry(token.toString().trim(), getInt(spec, "replicas", defaultReplicas),
+                                profile != null ? profile.toString().trim() : null));
+                    }
+                } else if (entry != null) {
+                    parsedTokens.add(new TokenEntry(entry.toString().trim(), defaultReplicas));
+                }
+            }
+        }
+        this.tokens = Collections.unmodifiableList(parsedTokens);
+
+        Map<String, Object> startup = getSection(data, "startup");
+        this.startBurst = Math.max(1, getInt(startup, "burst", 4));
+        this.startRefillPerSecond = Math.max(0.01, getDouble(startup, "refill-per-second", 0.5));
+        this.readyTimeoutSeconds = Math.max(1, getInt(startup, "ready-timeout-seconds", 30));
+        this.backoffBaseSeconds = Math.max(1, getInt(startup, "backoff-base-seconds", 5));
+        this.backoffMaxSeconds = Math.max(backoffBaseSeconds, getInt(startup, "backoff-max-seconds", 120));
+
+        Map<String, Object> logs = getSection(data, "logs");
+        this.logBufferLines = Math.max(1, getInt(logs, "buffer-lines", 200));
+
+        Map<String, Object> supervisor = getSection(data, "supervisor");
+        this.supervisorEnabled = getBoolean(supervisor, "enabled", true);
+        this.restartBackoffBaseSeconds = Math.max(1, getInt(supervisor, "backoff-base-seconds", 2));
+        this.restartBackoffMaxSeconds = Math.max(restartBackoffBaseSeconds, getInt(supervisor, "backoff-max-seconds", 300));
+        this.crashLoopThreshold = Math.max(1, getInt(supervisor, "crash-loop-threshold", 5));
+        this.crashLoopWindowSeconds = Math.max(1, getInt(supervisor, "crash-loop-window-seconds", 300));
+
+        Map<String, Object> update = getSection(data, "update");
+        this.releaseCacheTtlMinutes = Math.max(0, getInt(update, "cache-ttl-minutes", 60));
+        this.downloadConnections = Math.max(1, getInt(update, "download-connections", 4));
+        this.downloadChunkSizeMb = Math.max(1, getInt(update, "download-chunk-size-mb", 4));
+        this.downloadRetries = Math.max(0, getInt(update, "download-retries", 5));
+        this.rollingUpgrade = getBoolean(update, "rolling-upgrade", true);
+        Object sharedCacheValue = update.get("shared-cache");
+        this.sharedCache = sharedCacheValue != null ? sharedCacheValue.toString().trim() : "";
+
+        List<Map<String, Object>> sources = new ArrayList<>();
+        Object sourceList = update.get("sources");
+        if (sourceList instanceof List) {
+            for (Object entry : (List<?>) sourceList) {
+                if (entry instanceof Map) {
+                    sources.add(toStringKeyMap((Map<?, ?>) entry));
+                } else if (entry != null) {
+                    sources.add(Collections.singletonMap("type", entry.toString()));
+                }
+            }
+        }
+        if (sources.isEmpty()) {
+            sources.add(Collections.singletonMap("type", "github"));
+        }
+        this.releaseSources = Collections.unmodifiableList(sources);
+
+        Map<String, Object> metrics = getSection(data, "metrics");
+        this.metricsEnabled = getBoolean(metrics, "enabled", true);
+        this.metricsPortRangeStart = Math.max(1, getInt(metrics, "port-range-start", 20241));
+        this.metricsPortRangeEnd = Math.max(metricsPortRangeStart, Math.min(65535, getInt(metrics, "port-range-end", 20340)));
+        this.metricsScrapeIntervalSeconds = Math.max(1, getInt(metrics, "scrape-interval-seconds", 10));
+
+        Map<String, Object> reload = getSection(data, "reload");
+        this.watchConfig = getBoolean(reload, "watch", true);
+
+        Map<String, LaunchProfile> parsedProfiles = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : getSection(data, "profiles").entrySet()) {
+            if (entry.getValue() instanceof Map) {
+                String name = String.valueOf(entry.getKey());
+                parsedProfiles.put(name, LaunchProfile.parse(name, toStringKeyMap((Map<?, ?>) entry.getValue())));
+            }
+        }
+        this.profiles = Collections.unmodifiableMap(parsedProfiles);
+
+        Map<String, Object> resources = getSection(data, "resources");
+        this.resourceSamplingEnabled = getBoolean(resources, "enabled", true);
+        this.resourceSampleIntervalSeconds = Math.max(1, getInt(resources, "sample-interval-seconds", 5));
+        this.resourceHistorySize = Math.max(1, getInt(resources, "history-size", 60));
+        this.maxRssMb = Math.max(0, getInt(resources, "max-rss-mb", 0));
+        this.maxCpuPercent = Math.max(0, getInt(resources, "max-cpu-percent", 0));
+        this.breachSamples = Math.max(1, getInt(resources, "breach-samples", 3));
+
+        Map<String, Object> shutdown = getSection(data, "shutdown");
+        this.shutdownTimeoutSeconds = Math.max(1, getInt(shutdown, "timeout-seconds", 10));
+
+        Map<String, Object> adoption = getSection(data, "adoption");
+        this.adoptionEnabled = getBoolean(adoption, "enabled", false);
+        this.keepRunningOnReload = getBoolean(adoption, "keep-running-on-reload", false);
+
+        Map<String, Object> console = getSection(data, "console");
+        this.consoleLevel = getConsoleLevel(console.get("level"), "warn");
+        Map<String, String> tunnelLevels = new LinkedHashMap<>();
+        Object tunnelLevelMap = console.get("tunnels");
+        if (tunnelLevelMap instanceof Map) {
+            for (Map.Entry<String, Object> entry : toStringKeyMap((Map<?, ?>) tunnelLevelMap).entrySet()) {
+                tunnelLevels.put(entry.getKey(), getConsoleLevel(entry.getValue(), consoleLevel));
+            }
+        }
+        this.consoleTunnelLevels = Collections.unmodifiableMap(tunnelLevels);
+        this.consoleMaxLinesPerSecond = Math.max(1, getInt(console, "max-lines-per-second", 20));
+        this.consoleQueueSize = Math.max(64, getInt(console, "queue-size", 2048));
+
+        Map<String, Object> relay = getSection(data, "relay");
+        this.relayEnabled = getBoolean(relay, "enabled", false);
+        this.relayBufferKb = Math.max(4, getInt(relay, "buffer-kb", 64));
+        this.relayConnectTimeoutSeconds = Math.max(1, getInt(relay, "connect-timeout-seconds", 5));
+        List<RelayRoute> routes = new ArrayList<>();
+        Object routeList = relay.get("routes");
+        if (routeList instanceof List) {
+            for (Object entry : (List<?>) routeList) {
+                if (entry instanceof Map) {
+                    RelayRoute route = RelayRoute.parse("route-" + (routes.size() + 1), toStringKeyMap((Map<?, ?>) entry));
+                    if (route != null) {
+                        routes.add(route);
+                    }
+                }
+            }
+        }
+        this.relayRoutes = Collections.unmodifiableList(routes);
+
+        this.ingress = IngressConfig.parse(getSection(data, "ingress"), defaultReplicas);
+    }
+
+    // off/error/warn/info/debug; YAML reads a bare `off` as false
+    private static String getConsoleLevel(Object value, String def) {
+        if (Boolean.FALSE.equals(value)) {
+            return "off";
+        }
+        String level = value != null ? value.toString().trim().toLowerCase(Locale.ROOT) : def;
+        return AsyncBridgeLogger.isLevel(level) ? level : def;
+    }
+
+    public static BridgeConfig load(Path configFile) throws IOException {
+        try (InputStream in = Files.newInputStream(configFile)) {
+            Map<String, Object> data = new Yaml().load(in);
+            return new BridgeConfig(data != null ? data : Collections.emptyMap());
+        }
+    }
+
+    public static BridgeConfig empty() {
+        return new BridgeConfig(Collections.emptyMap());
+    }
+
+    public static void writeDefault(Path configFile) throws IOException {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("tokenlist", Arrays.asList(PLACEHOLDER_TOKEN, "another_token_if_needed"));
+
+        Map<String, Object> startup = new LinkedHashMap<>();
+        startup.put("burst", 4);
+        startup.put("refill-per-second", 0.5);
+        startup.put("ready-timeout-seconds", 30);
+        startup.put("backoff-base-seconds", 5);
+        startup.put("backoff-max-seconds", 120);
+        data.put("startup", startup);
+
+        Map<String, Object> logs = new LinkedHashMap<>();
+        logs.put("buffer-lines", 200);
+        data.put("logs", logs);
+
+        Map<String, Object> supervisor = new LinkedHashMap<>();
+        supervisor.put("enabled", true);
+        supervisor.put("backoff-base-seconds", 2);
+        supervisor.put("backoff-max-seconds", 300);
+        supervisor.put("crash-loop-threshold", 5);
+        supervisor.put("crash-loop-window-seconds", 300);
+        data.put("supervisor", supervisor);
+
+        Map<String, Object> update = new LinkedHashMap<>();
+        update.put("cache-ttl-minutes", 60);
+        update.put("download-connections", 4);
+        update.put("download-chunk-size-mb", 4);
+        update.put("download-retries", 5);
+        update.put("rolling-upgrade", true);
+        update.put("shared-cache", "");
+        update.put("sources", Collections.singletonList(Collections.singletonMap("type", "github")));
+        data.put("update", update);
+
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", true);
+        metrics.put("port-range-start", 20241);
+        metrics.put("port-range-end", 20340);
+        metrics.put("scrape-interval-seconds", 10);
+        data.put("metrics", metrics);
+
+        Map<String, Object> reload = new LinkedHashMap<>();
+        reload.put("watch", true);
+        data.put("reload", reload);
+
+        Map<String, Object> replicas = new LinkedHashMap<>();
+        replicas.put("default", 1);
+        replicas.put("stagger-seconds", 2);
+        replicas.put("cpu-pinning", false);
+        replicas.put("cpus-per-replica", 1);
+        data.put("replicas", replicas);
+
+        Map<String, Object> profile = new LinkedHashMap<>();
+        profile.put("protocol", "quic");
+        profile.put("ha-connections", 4);
+        profile.put("edge-ip-version", "auto");
+        profile.put("retries", 5);
+        profile.put("grace-period", "30s");
+        Map<String, Object> env = new LinkedHashMap<>();
+        env.put("GOMAXPROCS", "2");
+        env.put("GOMEMLIMIT", "256MiB");
+        profile.put("env", env);
+        data.put("profiles", Collections.singletonMap(LaunchProfile.DEFAULT, profile));
+
+        Map<String, Object> resources = new LinkedHashMap<>();
+        resources.put("enabled", true);
+        resources.put("sample-interval-seconds", 5);
+        resources.put("history-size", 60);
+        resources.put("max-rss-mb", 0);
+        resources.put("max-cpu-percent", 0);
+        resources.put("breach-samples", 3);
+        data.put("resources", resources);
+
+        Map<String, Object> shutdown = new LinkedHashMap<>();
+        shutdown.put("timeout-seconds", 10);
+        data.put("shutdown", shutdown);
+
+        Map<String, Object> adoption = new LinkedHashMap<>();
+        adoption.put("enabled", false);
+        adoption.put("keep-running-on-reload", false);
+        data.put("adoption", adoption);
+
+        Map<String, Object> console = new LinkedHashMap<>();
+        console.put("level", "warn");
+        console.put("tunnels", new LinkedHashMap<>());
+        console.put("max-lines-per-second", 20);
+        console.put("queue-size", 2048);
+        data.put("console", console);
+
+        Map<String, Object> route = new LinkedHashMap<>();
+        route.put("name", "minecraft");
+        route.put("listen", 25566);
+        route.put("origin", "localhost:25565");
+        route.put("proxy-protocol", "off");
+        Map<String, Object> relay = new LinkedHashMap<>();
+        relay.put("enabled", false);
+        relay.put("buffer-kb", 64);
+        relay.put("connect-timeout-seconds", 5);
+        relay.put("routes", Collections.singletonList(route));
+        data.put("relay", relay);
+
+        Map<String, Object> rule = new LinkedHashMap<>();
+        rule.put("hostname", "map.example.com");
+        rule.put("service", "http://localhost:8123");
+        Map<String, Object> ingress = new LinkedHashMap<>();
+        ingress.put("enabled", false);
+        ingress.put("token", "");
+        ingress.put("tunnel", "");
+        ingress.put("credentials-file", "");
+        ingress.put("replicas", 1);
+        ingress.put("rules", Collections.singletonList(rule));
+        ingress.put("fallback", "http_status:404");
+        data.put("ingress", ingress);
+
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        try (Writer writer = Files.newBufferedWriter(configFile, StandardCharsets.UTF_8)) {
+            new Yaml(options).dump(data, writer);
+        }
+    }
+
+    // Tokens that are actually usable (placeholder and blank entries skipped)
+    public List<String> getTokens() {
+        List<String> result = new ArrayList<>();
+        for (TokenEntry entry : getTokenEntries()) {
+            result.add(entry.getToken());
+        }
+        return result;
+    }
+
+    // The tokenlist plus the ingress tunnel, when that section is enabled and usable
+    public List<TokenEntry> getTokenEntries() {
+        List<TokenEntry> result = new ArrayList<>();
+        for (TokenEntry entry : tokens) {
+            if (!entry.getToken().equals(PLACEHOLDER_TOKEN) && !entry.getToken().isEmpty()) {
+                result.add(entry);
+            }
+        }
+        if (ingress != null && ingress.getProblem() == null) {
+            result.add(ingress.toTokenEntry());
+        }
+        return result;
+    }
+
+    public TokenEntry getTokenEntry(String token) {
+        for (TokenEntry entry : getTokenEntries()) {
+            if (entry.getToken().equals(token)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    public int getReplicaStaggerSeconds() {
+        return replicaStaggerSeconds;
+    }
+
+    public boolean isCpuPinning() {
+        return cpuPinning;
+    }
+
+    public int getCpusPerReplica() {
+        return cpusPerReplica;
+    }
+
+    public int getStartBurst() {
+        return startBurst;
+    }
+
+    public double getStartRefillPerSecond() {
+        return startRefillPerSecond;
+    }
+
+    public int getReadyTimeoutSeconds() {
+        return readyTimeoutSeconds;
+    }
+
+    public int getBackoffBaseSeconds() {
+        return backoffBaseSeconds;
+    }
+
+    public int getBackoffMaxSeconds() {
+        return backoffMaxSeconds;
+    }
+
+    public int getLogBufferLines() {
+        return logBufferLines;
+    }
+
+    public boolean isSupervisorEnabled() {
+        return supervisorEnabled;
+    }
+
+    public int getRestartBackoffBaseSeconds() {
+        return restartBackoffBaseSeconds;
+    }
+
+    public int getRestartBackoffMaxSeconds() {
+        return restartBackoffMaxSeconds;
+    }
+
+    public int getCrashLoopThreshold() {
+        return crashLoopThreshold;
+    }
+
+    public int getCrashLoopWindowSeconds() {
+        return crashLoopWindowSeconds;
+    }
+
+    public int getReleaseCacheTtlMinutes() {
+        return releaseCacheTtlMinutes;
+    }
+
+    public int getDownloadConnections() {
+        return downloadConnections;
+    }
+
+    public int getDownloadChunkSizeMb() {
+        return downloadChunkSizeMb;
+    }
+
+    public int getDownloadRetries() {
+        return downloadRetries;
+    }
+
+    public boolean isRollingUpgrade() {
+        return rollingUpgrade;
+    }
+
+    // Directory shared by all servers on the host for downloaded binaries; empty when disabled
+    public String getSharedCache() {
+        return sharedCache;
+    }
+
+    // Ordered release sources; each entry has a "type" (github, mirror, directory) plus its settings
+    public List<Map<String, Object>> getReleaseSources() {
+        return releaseSources;
+    }
+
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    public int getMetricsPortRangeStart() {
+        return metricsPortRangeStart;
+    }
+
+    public int getMetricsPortRangeEnd() {
+        return metricsPortRangeEnd;
+    }
+
+    public int getMetricsScrapeIntervalSeconds() {
+        return metricsScrapeIntervalSeconds;
+    }
+
+    public boolean isWatchConfig() {
+        return watchConfig;
+    }
+
+    public Map<String, LaunchProfile> getProfiles() {
+        return profiles;
+    }
+
+    // Named profile, or null if config.yml does not define it
+    public LaunchProfile getProfile(String name) {
+        return profiles.get(name);
+    }
+
+    // Profile for a token's processes: its own profile if defined, else "default", else cloudflared's defaults
+    public LaunchProfile resolveProfile(TokenEntry entry) {
+        String name = entry != null ? entry.getProfile() : null;
+        LaunchProfile profile = name != null ? profiles.get(name) : null;
+        if (profile == null) {
+            profile = profiles.get(LaunchProfile.DEFAULT);
+        }
+        return profile != null ? profile : LaunchProfile.empty(LaunchProfile.DEFAULT);
+    }
+
+    public boolean isResourceSamplingEnabled() {
+        return resourceSamplingEnabled;
+    }
+
+    public int getResourceSampleIntervalSeconds() {
+        return resourceSampleIntervalSeconds;
+    }
+
+    public int getResourceHistorySize() {
+        return resourceHistorySize;
+    }
+
+    // Memory budget per process in MB; 0 disables recycling on memory
+    public int getMaxRssMb() {
+        return maxRssMb;
+    }
+
+    // CPU budget per process in percent of one core; 0 disables recycling on CPU
+    public int getMaxCpuPercent() {
+        return maxCpuPercent;
+    }
+
+    public int getBreachSamples() {
+        return breachSamples;
+    }
+
+    // Deadline for all processes together to exit on stop before they are killed
+    public int getShutdownTimeoutSeconds() {
+        return shutdownTimeoutSeconds;
+    }
+
+    // Log to files and record running processes so a later start can adopt them
+    public boolean isAdoptionEnabled() {
+        return adoptionEnabled;
+    }
+
+    // Leave processes running when the plugin is reloaded (not when the server stops); needs adoption
+    public boolean isKeepRunningOnReload() {
+        return keepRunningOnReload;
+    }
+
+    // Lowest cloudflared level copied to the server console; tunnels can override it
+    public String getConsoleLevel() {
+        return consoleLevel;
+    }
+
+    public Map<String, String> getConsoleTunnelLevels() {
+        return consoleTunnelLevels;
+    }
+
+    public int getConsoleMaxLinesPerSecond() {
+        return consoleMaxLinesPerSecond;
+    }
+
+    public int getConsoleQueueSize() {
+        return consoleQueueSize;
+    }
+
+    // Local TCP relay between cloudflared and the origins, for per-origin traffic and latency stats
+    public boolean isRelayEnabled() {
+        return relayEnabled;
+    }
+
+    public int getRelayBufferKb() {
+        return relayBufferKb;
+    }
+
+    public int getRelayConnectTimeoutSeconds() {
+        return relayConnectTimeoutSeconds;
+    }
+
+    public List<RelayRoute> getRelayRoutes() {
+        return relayRoutes;
+    }
+
+    // Null unless the ingress section is enabled
+    public IngressConfig getIngress() {
+        return ingress;
+    }
+
+    // True for the tokenlist entry that stands for the ingress tunnel
+    public boolean isIngressToken(String token) {
+        return ingress != null && ingress.getProblem() == null && ingress.getTunnelId().equals(token);
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> getSection(Map<String, Object> data, String key) {
+        Object value = data.get(key);
+        if (value instanceof Map) {
+            return (Map<String, Object>) value;
+        }
+        return Collections.emptyMap();
+    }
+
+    static int getInt(Map<String, Object> data, String key, int def) {
+        Object value = data.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Integer.parseInt(((String) value).trim());
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return def;
+    }
+
+    static double getDouble(Map<String, Object> data, String key, double def) {
+        Object value = data.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Double.parseDouble(((String) value).trim());
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return def;
+    }
+
+    static boolean getBoolean(Map<String, Object> data, String key, boolean def) {
+        Object value = data.get(key);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if (value instanceof String) {
+            return Boolean.parseBoolean(((String) value).trim());
+        }
+        return def;
+    }
+
+    static Map<String, Object> toStringKeyMap(Map<?, ?> map) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            result.put(String.valueOf(entry.getKey()), entry.getValue());
+        }
+        return result;
+    }
+}
@@ -1,7 +1,14 @@
 package github.vanes430.cloudflaredbridge.common;
 
+import java.util.List;
+
 public interface BridgeLogger {
     void info(String message);
     void warning(String message);
     void severe(String message);
+
+    // Console lines that already carry their color codes; platforms override this to send them in one call
+    default void write(List<String> lines) {
+        lines.forEach(this::info);
+    }
 }
@@ -3,20 +3,34 @@ package github.vanes430.cloudflaredbridge.common;
 import java.io.*;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class BridgeUtils {
 
+    static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+    static final int READ_TIMEOUT_MILLIS = 30_000;
+    private static final int HASH_BUFFER_SIZE = 1 << 20;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
     public static String fetchUrl(String urlString) throws IOException {
         URL url = new URL(urlString);
         HttpURLConnection conn = (HttpURLConnection) url.openConnection();
         conn.setRequestMethod("GET");
         conn.setRequestProperty("User-Agent", "CloudflaredBridge");
+        conn.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        conn.setReadTimeout(READ_TIMEOUT_MILLIS);
         
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
             StringBuilder result = new StringBuilder();
@@ -28,26 +42,118 @@ public class BridgeUtils {
         }
     }
 
-    public static void downloadFile(String urlString, Path destination) throws IOException {
+    // GET with If-None-Match; a 304 reply comes back with a null body. The caller streams and closes the body.
+    public static HttpResult fetchConditional(String urlString, String etag) throws IOException {
         URL url = new URL(urlString);
         HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestMethod("GET");
         conn.setRequestProperty("User-Agent", "CloudflaredBridge");
-        try (InputStream in = conn.getInputStream()) {
-            Files.copy(in, destination, StandardCopyOption.REPLACE_EXISTING);
+        conn.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        conn.setReadTimeout(READ_TIMEOUT_MILLIS);
+        if (etag != null) {
+            conn.setRequestProperty("If-None-Match", etag);
+        }
+
+        int status = conn.getResponseCode();
+        if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            conn.disconnect();
+            return new HttpResult(status, null, etag);
+        }
+        if (status != HttpURLConnection.HTTP_OK) {
+            conn.disconnect();
+            throw new IOException("HTTP " + status + " from " + urlString);
         }
+        return new HttpResult(status, conn.getInputStream(), conn.getHeaderField("ETag"));
+    }
+
+    // Opens a GET stream with timeouts; redirects (e.g. GitHub's asset CDN) are followed
+    public static InputStream openStream(String urlString) throws IOException {
+        URL url = new URL(urlString);
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestProperty("User-Agent", "CloudflaredBridge");
+        conn.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        conn.setReadTimeout(READ_TIMEOUT_MILLIS);
+        int status = conn.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            conn.disconnect();
+            throw new IOException("HTTP " + status + " from " + urlString);
+        }
+        return conn.getInputStream();
     }
 
     public static String calculateSha256(Path path) throws IOException, NoSuchAlgorithmException {
         MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        try (InputStream fis = Files.newInputStream(path);
-             java.security.DigestInputStream dis = new java.security.DigestInputStream(fis, digest)) {
-            byte[] buffer = new byte[8192];
-            while (dis.read(buffer) != -1) ; // Read all bytes
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xFF;
+            out[i * 2] = HEX[b >>> 4];
+            out[i * 2 + 1] = HEX[b & 0x0F];
         }
-        StringBuilder result = new StringBuilder();
-        for (byte b : digest.digest()) {
-            result.append(String.format("%02x", b));
+        return new String(out);
+    }
+
+    // Parses sha256sum output: "<hash>  <file>" or "<hash> *<file>" per line
+    public static Map<String, String> parseSha256Sums(String content) {
+        Map<String, String> hashes = new HashMap<>();
+        for (String line : content.split("\n")) {
+            String[] parts = line.trim().split("\\s+", 2);
+            if (parts.length == 2 && parts[0].length() == 64) {
+                String name = parts[1].startsWith("*") ? parts[1].substring(1) : parts[1];
+                hashes.put(name.trim(), parts[0].toLowerCase(Locale.ROOT));
+            }
+        }
+        return hashes;
+    }
+
+    public static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public static class HttpResult implements Closeable {
+        private final int status;
+        private final InputStream body;
+        private final String etag;
+
+        public HttpResult(int status, InputStream body, String etag) {
+            this.status = status;
+            this.body = body;
+            this.etag = etag;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public InputStream getBody() {
+            return body;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (body != null) {
+                body.close();
+            }
         }
-        return result.toString();
     }
 }
@@ -0,0 +1,87 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+// Streaming parser for cloudflared's console output, fed one line at a time.
+// Lines look like: 2024-05-01T12:00:00Z INF Registered tunnel connection connIndex=0 ... location=ams08 protocol=quic
+public class CloudflaredLogParser {
+
+    private static final Pattern RATE_LIMIT_STATUS = Pattern.compile("(?:status|code|http)[^0-9a-z]{0,3}429(?![0-9a-z])");
+
+    private final Tunnel tunnel;
+
+    public CloudflaredLogParser(Tunnel tunnel) {
+        this.tunnel = tunnel;
+    }
+
+    public void accept(String line) {
+        String level = parseLevel(line);
+        if (line.contains("Unregistered tunnel connection") || line.contains("Connection terminated")
+                || line.contains("Lost connection with the edge")) {
+            tunnel.markConnectionLost(parseConnIndex(line));
+        } else if (line.contains("Registered tunnel connection")) {
+            tunnel.markConnectionRegistered(parseConnIndex(line), field(line, "location"), field(line, "protocol"));
+        } else if (("WRN".equals(level) || "ERR".equals(level)) && isRateLimit(line)) {
+            tunnel.markRateLimited();
+        } else if (line.contains("Initial protocol ")) {
+            String protocol = line.substring(line.indexOf("Initial protocol ") + 17).trim();
+            int space = protocol.indexOf(' ');
+            tunnel.setProtocol(space < 0 ? protocol : protocol.substring(0, space));
+        }
+    }
+
+    // Returns INF/WRN/ERR/DBG/FTL when the line carries cloudflared's level column, otherwise null
+    public static String parseLevel(String line) {
+        int space = line.indexOf(' ');
+        if (space < 0 || line.length() < space + 4) {
+            return null;
+        }
+        String level = line.substring(space + 1, space + 4);
+        switch (level) {
+            case "INF":
+            case "WRN":
+            case "ERR":
+            case "DBG":
+            case "FTL":
+                return level;
+            default:
+                return null;
+        }
+    }
+
+    // A bare "429" also occurs in tunnel and connector IDs, IPs and ports, so the code only counts next to
+    // status/code/HTTP (status=429, "status code: 429", HTTP 429)
+    static boolean isRateLimit(String line) {
+        String lower = line.toLowerCase(Locale.ROOT);
+        return lower.contains("too many requests") || lower.contains("rate limit") || RATE_LIMIT_STATUS.matcher(lower).find();
+    }
+
+    static int parseConnIndex(String line) {
+        String value = field(line, "connIndex");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Extracts the value of a key=value pair; quoted values may contain spaces
+    static String field(String line, String key) {
+        String marker = " " + key + "=";
+        int start = line.indexOf(marker);
+        if (start < 0) {
+            return null;
+        }
+        start += marker.length();
+        if (start < line.length() && line.charAt(start) == '"') {
+            int end = line.indexOf('"', start + 1);
+            return end < 0 ? line.substring(start + 1) : line.substring(start + 1, end);
+        }
+        int end = line.indexOf(' ', start);
+        return end < 0 ? line.substring(start) : line.substring(start, end);
+    }
+}
@@ -1,52 +1,104 @@
 package github.vanes430.cloudflaredbridge.common;
 
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
-import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
-import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
-import org.yaml.snakeyaml.Yaml;
-
-import java.io.BufferedReader;
-import java.io.BufferedInputStream;
-import java.io.FileWriter;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 public class CloudflaredManager {
 
-    private static final String GITHUB_API_URL = "https://api.github.com/repos/cloudflare/cloudflared/releases/latest";
     private final Path rootDir;
     private final BridgeLogger logger;
-    private final Map<String, Process> processes = new ConcurrentHashMap<>();
+    private final AsyncBridgeLogger console;
+    private final Map<String, Tunnel> tunnels = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService lifecycle;
+    private final LogPump logPump = new LogPump();
+    private final TunnelSupervisor supervisor;
+    private final ReleaseCache releaseCache;
+    private volatile MetricsPortPool metricsPorts;
+    private volatile CpuSetPool cpuSets;
+    private final Object upgradeLock = new Object();
+    private static final long STOP_TIMEOUT_SECONDS = 5;
+    private static final long DRAIN_TIMEOUT_SECONDS = 35;
+    private volatile String currentVersion;
+    private final Set<Tunnel> replacements = ConcurrentHashMap.newKeySet();
+    private volatile ConfigWatcher configWatcher;
+    private volatile boolean shuttingDown;
+    private boolean detached;
+    private final ProcessStateFile stateFile;
+    private static final long MAX_LOG_REPLAY_BYTES = 256 * 1024;
+    private volatile OriginRelay relay;
+    private boolean ingressRewritten;
     
     // Config
-    private List<String> tokens = new CopyOnWriteArrayList<>();
+    private volatile BridgeConfig config = BridgeConfig.empty();
 
     public CloudflaredManager(Path rootDir, BridgeLogger logger) {
         this.rootDir = rootDir;
-        this.logger = logger;
+        // Everything the manager logs, and forwarded cloudflared output, is written from the console thread
+        this.console = new AsyncBridgeLogger(logger);
+        this.logger = console;
+        this.releaseCache = new ReleaseCache(rootDir.resolve("cache"));
+        this.stateFile = new ProcessStateFile(rootDir.resolve("processes.state"));
+        this.currentVersion = readCurrentVersion();
+        this.scheduler = Executors.newScheduledThreadPool(2, BridgeUtils.daemonThreadFactory("CloudflaredBridge-Scheduler"));
+        this.scheduler.scheduleWithFixedDelay(logPump, 50, 50, TimeUnit.MILLISECONDS);
+        // Start, stop, reload, scale and update checks run one at a time on this thread, so they never overlap
+        this.lifecycle = Executors.newSingleThreadExecutor(BridgeUtils.daemonThreadFactory("CloudflaredBridge-Lifecycle"));
+        this.supervisor = new TunnelSupervisor(scheduler, this.logger, this::getConfig,
+                tunnel -> tunnels.get(tunnel.getKey()) == tunnel,
+                this::startProcess);
+        MetricsScraper scraper = new MetricsScraper(scheduler, () -> tunnels.values(), this::getConfig);
+        this.scheduler.scheduleWithFixedDelay(scraper, 1, 1, TimeUnit.SECONDS);
+        ProcessSampler sampler = new ProcessSampler(() -> tunnels.values(), this::getConfig, this::recycle, this.logger);
+        this.scheduler.scheduleWithFixedDelay(sampler, 1, 1, TimeUnit.SECONDS);
     }
 
-    public void init() {
+    // Loads config.yml and installs the latest Cloudflared in the background
+    public CompletableFuture<Void> init() {
+        return submit("Initialization", () -> {
+            initNow();
+            return null;
+        });
+    }
+
+    private void initNow() {
+        long startedAt = System.nanoTime();
         try {
             if (!Files.exists(rootDir)) {
                 Files.createDirectories(rootDir);
             }
             loadConfig();
+            configureRelay(null);
+            ingressRewritten = writeIngress(config);
+            adoptSurvivors();
+            configureWatcher();
             checkForUpdatesAndInstall();
+            logger.info("Initialized in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt) + "ms.");
         } catch (Exception e) {
             logger.severe("Failed to initialize CloudflaredManager: " + e.getMessage());
             e.printStackTrace();
@@ -57,58 +109,165 @@ public class CloudflaredManager {
         Path configFile = rootDir.resolve("config.yml");
         if (!Files.exists(configFile)) {
             try {
-                // Create default config
-                Map<String, Object> data = new HashMap<>();
-                data.put("tokenlist", Arrays.asList("replace_with_your_token_here", "another_token_if_needed"));
-                Yaml yaml = new Yaml();
-                try (Writer writer = new FileWriter(configFile.toFile())) {
-                    yaml.dump(data, writer);
-                }
+                BridgeConfig.writeDefault(configFile);
                 logger.info("Created default config.yml in " + rootDir);
             } catch (IOException e) {
                 logger.severe("Could not create default config.yml: " + e.getMessage());
             }
         }
 
-        try (InputStream in = Files.newInputStream(configFile)) {
-            Yaml yaml = new Yaml();
-            Map<String, Object> data = yaml.load(in);
-            if (data != null && data.containsKey("tokenlist")) {
-                Object list = data.get("tokenlist");
-                if (list instanceof List) {
-                    tokens.clear();
-                    tokens.addAll((List<String>) list);
-                }
-            }
+        try {
+            config = BridgeConfig.load(configFile);
         } catch (Exception e) {
             logger.severe("Error loading config.yml: " + e.getMessage());
         }
+        metricsPorts = new MetricsPortPool(config.getMetricsPortRangeStart(), config.getMetricsPortRangeEnd());
+        cpuSets = createCpuSetPool(config);
+        console.configure(config);
+        warnUnknownProfiles(config);
     }
 
-    public void start(int delaySeconds) {
-        if (tokens.isEmpty()) {
-            logger.warning("No tokens found in config.yml. Cloudflared will not start.");
+    // Starts, replaces or stops the relay when its settings differ from the previous config; replacing it drops
+    // the connections it is carrying
+    private void configureRelay(BridgeConfig previous) {
+        OriginRelay current = relay;
+        if (previous != null && previous.isRelayEnabled() == config.isRelayEnabled()
+                && previous.getRelayRoutes().equals(config.getRelayRoutes())
+                && previous.getRelayBufferKb() == config.getRelayBufferKb()
+                && previous.getRelayConnectTimeoutSeconds() == config.getRelayConnectTimeoutSeconds()) {
             return;
         }
+        if (current != null) {
+            current.close();
+            relay = null;
+        }
+        if (!config.isRelayEnabled() || config.getRelayRoutes().isEmpty()) {
+            return;
+        }
+        try {
+            OriginRelay started = new OriginRelay(config.getRelayRoutes(), config.getRelayBufferKb() * 1024,
+                    TimeUnit.SECONDS.toMillis(config.getRelayConnectTimeoutSeconds()), logger);
+            for (RelayRoute route : started.getStats().keySet()) {
+                InetSocketAddress listening = started.getAddress(route);
+                logger.info("Relaying " + listening.getAddress().getHostAddress() + ":" + listening.getPort() + " to " + route.getOriginHost() + ":" + route.getOriginPort()
+                        + " (" + route.getName() + (route.getProxyProtocol() > 0 ? ", PROXY v" + route.getProxyProtocol() : "") + ").");
+            }
+            relay = started;
+        } catch (IOException e) {
+            logger.severe("Could not start the origin relay: " + e.getMessage());
+        }
+    }
 
-        if (delaySeconds < 5) {
-            delaySeconds = 5;
-            logger.warning("Delay specified was less than 5 seconds. Enforcing minimum delay of 5 seconds.");
+    // Opens or closes the config.yml watcher to match reload.watch, so turning it off takes effect on reload too
+    private void configureWatcher() {
+        ConfigWatcher current = configWatcher;
+        if (config.isWatchConfig() == (current != null) || shuttingDown) {
+            return;
+        }
+        if (current != null) {
+            configWatcher = null;
+            try {
+                current.close();
+            } catch (IOException e) {
+                logger.warning("Could not stop watching config.yml: " + e.getMessage());
+            }
+            logger.info("Stopped watching config.yml for changes.");
+            return;
+        }
+        try {
+            configWatcher = new ConfigWatcher(rootDir.resolve("config.yml"), scheduler, this::reload, logger); // Queued like /cloudflared reload
+        } catch (IOException e) {
+            logger.severe("Could not watch config.yml for changes: " + e.getMessage());
         }
+    }
 
+    // Regenerates cloudflared's config for the ingress tunnel; true if it changed, so processes running the
+    // previous file serve outdated rules. An unusable ingress section is reported and left out of the tunnels.
+    private boolean writeIngress(BridgeConfig config) {
+        IngressConfig ingress = config.getIngress();
+        if (ingress == null) {
+            return false;
+        }
+        if (ingress.getProblem() != null) {
+            logger.warning("Ingress tunnel not started: " + ingress.getProblem() + ".");
+            return false;
+        }
+        if (ingress.getSkippedRules() > 0) {
+            logger.warning("Skipped " + ingress.getSkippedRules() + " ingress rule(s) without a hostname or service.");
+        }
         try {
-            checkForUpdatesAndInstall();
+            return ingress.write(rootDir.resolve("ingress"));
+        } catch (IOException e) {
+            logger.severe("Could not write the ingress config: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void warnUnknownProfiles(BridgeConfig config) {
+        for (TokenEntry entry : config.getTokenEntries()) {
+            if (entry.getProfile() != null && config.getProfile(entry.getProfile()) == null) {
+                logger.warning("Unknown launch profile '" + entry.getProfile() + "' in tokenlist; using the default profile.");
+            }
+        }
+    }
+
+    // Runs a lifecycle operation on the lifecycle thread; failures are logged and complete the future exceptionally
+    private <T> CompletableFuture<T> submit(String operation, Supplier<T> task) {
+        CompletableFuture<T> future;
+        try {
+            future = CompletableFuture.supplyAsync(task, lifecycle);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(new IllegalStateException("CloudflaredBridge is shutting down."));
+        }
+        return future.whenComplete((result, error) -> {
+            if (error != null) {
+                logger.severe(operation + " failed: " + error.getMessage());
+            }
+        });
+    }
+
+    public CompletableFuture<List<Tunnel>> start() {
+        return submit("Start", () -> startNow(config.getStartBurst(), config.getStartRefillPerSecond()));
+    }
+
+    // Launches every configured tunnel, paced by a token bucket of the given burst and refill rate and gated on
+    // readiness: the next tunnel starts as soon as a previous one registers its first edge connection.
+    // Completes once all launches are queued; each tunnel's own futures report launch and readiness.
+    public CompletableFuture<List<Tunnel>> start(int burst, double refillPerSecond) {
+        return submit("Start", () -> startNow(burst, refillPerSecond));
+    }
+
+    private List<Tunnel> startNow(int burst, double refillPerSecond) {
+        List<TokenEntry> entries = config.getTokenEntries();
+        if (entries.isEmpty()) {
+            logger.warning("No tokens found in config.yml. Cloudflared will not start.");
+            return Collections.emptyList();
+        }
+        List<Tunnel> started = launch(entries, burst, refillPerSecond);
+        if (started.isEmpty() && !tunnels.isEmpty()) {
+            logger.warning("All configured Cloudflared processes are already running.");
+        }
+        return started;
+    }
+
+    // Starts whichever replicas of the given entries are not running yet. Replicas of one token are
+    // staggered by replicas.stagger-seconds on top of the usual start pacing.
+    private List<Tunnel> launch(List<TokenEntry> entries, int burst, double refillPerSecond) {
+        try {
+            if (checkForUpdatesAndInstall() && config.isRollingUpgrade() && !tunnels.isEmpty()) {
+                upgrade(); // Tunnels already running from the previous version move over in the background
+            }
         } catch (IOException e) {
             logger.severe("Failed to check for updates: " + e.getMessage());
             if (!Files.exists(getBinaryPath())) {
-                return;
+                return Collections.emptyList();
             }
         }
 
         Path binaryPath = getBinaryPath();
         if (!Files.exists(binaryPath)) {
             logger.severe("Cloudflared binary not found! Cannot start.");
-            return;
+            return Collections.emptyList();
         }
 
         // Set executable permission on Unix-likes
@@ -116,100 +275,1032 @@ public class CloudflaredManager {
             binaryPath.toFile().setExecutable(true);
         }
 
-        for (int i = 0; i < tokens.size(); i++) {
-            String token = tokens.get(i);
-            if (token.equals("replace_with_your_token_here") || token.trim().isEmpty()) {
-                continue;
-            }
-            startProcess(token, binaryPath);
+        StartScheduler startScheduler = new StartScheduler(scheduler, logger, this::startProcess,
+                burst, refillPerSecond, config.getReadyTimeoutSeconds(),
+                config.getBackoffBaseSeconds(), config.getBackoffMaxSeconds());
+        List<String> allTokens = config.getTokens();
+        long staggerMillis = TimeUnit.SECONDS.toMillis(config.getReplicaStaggerSeconds());
+        List<Tunnel> started = new ArrayList<>();
+        for (TokenEntry entry : entries) {
+            String token = entry.getToken();
+            int index = indexFor(token, allTokens.indexOf(token) + 1);
+            for (int replica = 1; replica <= entry.getReplicas(); replica++) {
+                Tunnel existing = tunnels.get(Tunnel.replicaKey(token, replica));
+                if (existing != null && (existing.isAlive() || existing.getState() == TunnelState.QUEUED
+                        || existing.getState() == TunnelState.RESTARTING)) {
+                    continue; // Running, or about to be (re)started
+                }
 
-            if (i < tokens.size() - 1) {
-                try {
-                    logger.info("Waiting " + delaySeconds + "s before starting next tunnel...");
-                    Thread.sleep(delaySeconds * 1000L);
-                } catch (InterruptedException e) {
-                    logger.warning("Start sequence interrupted.");
-                    Thread.currentThread().interrupt();
-                    break;
+                Tunnel tunnel = new Tunnel(token, index, replica, config.getLogBufferLines());
+                tunnels.put(tunnel.getKey(), tunnel);
+                long delay = (replica - 1) * staggerMillis;
+                if (delay == 0) {
+                    startScheduler.submit(tunnel);
+                } else {
+                    scheduler.schedule(() -> {
+                        if (tunnels.get(tunnel.getKey()) == tunnel) {
+                            startScheduler.submit(tunnel);
+                        }
+                    }, delay, TimeUnit.MILLISECONDS);
                 }
+                tunnel.getReadyFuture().thenAccept(t -> logger.info(t.getDisplayName() + " registered a connection in "
+                        + t.getTimeToReadyMillis() + "ms (location=" + t.getLocation() + ", protocol=" + t.getProtocol() + ")"));
+                started.add(tunnel);
             }
         }
+        if (!started.isEmpty()) {
+            logger.info("Starting " + started.size() + " Cloudflared process(es) (burst=" + burst + ", rate=" + refillPerSecond + "/s)...");
+        }
+        return started;
     }
 
-    private void startProcess(String token, Path binaryPath) {
-        if (processes.containsKey(token)) {
-            if (processes.get(token).isAlive()) {
-                logger.warning("Cloudflared process for a token is already running.");
-                return;
-            } else {
-                processes.remove(token);
+    // Replicas share their token's number; a new token gets its position in the token list, unless a
+    // tunnel kept across a reload already uses that number
+    private int indexFor(String token, int preferred) {
+        Set<Integer> used = new HashSet<>();
+        for (Tunnel tunnel : tunnels.values()) {
+            if (tunnel.getToken().equals(token)) {
+                return tunnel.getIndex();
+            }
+            used.add(tunnel.getIndex());
+        }
+        int index = Math.max(1, preferred);
+        if (used.contains(index)) {
+            index = 1;
+            while (used.contains(index)) {
+                index++;
+            }
+        }
+        return index;
+    }
+
+    // Launches and stops of one tunnel hold its lock, so a stop can never miss a process that is being spawned
+    private void startProcess(Tunnel tunnel) {
+        synchronized (tunnel) {
+            if (tunnels.get(tunnel.getKey()) != tunnel || shuttingDown) {
+                return; // Stopped while waiting for its turn
+            }
+            launchProcess(tunnel);
+        }
+    }
+
+    // Spawns cloudflared for the tunnel from the current binary, whether or not the tunnel is tracked yet
+    private boolean launchProcess(Tunnel tunnel) {
+        Path binaryPath = getBinaryPath();
+        String version = currentVersion;
+        MetricsPortPool ports = metricsPorts;
+        int metricsPort = -1;
+        if (config.isMetricsEnabled()) {
+            metricsPort = ports.acquire();
+            if (metricsPort < 0) {
+                logger.warning("No free metrics port left for " + tunnel.getDisplayName() + "; starting without metrics.");
             }
         }
+        tunnel.getMetrics().setPort(metricsPort);
+        CpuSetPool cpuPool = cpuSets;
+        int cpuSlice = cpuPool != null ? cpuPool.acquire() : -1;
+        tunnel.setCpus(cpuSlice >= 0 ? cpuPool.cpuList(cpuSlice) : null);
+        LaunchProfile profile = config.resolveProfile(config.getTokenEntry(tunnel.getToken()));
+        tunnel.setProfile(profile);
 
+        Path logFile = null;
+        InputStream output = null;
         try {
-            logger.info("Starting Cloudflared tunnel...");
-            ProcessBuilder pb = new ProcessBuilder(
-                    binaryPath.toAbsolutePath().toString(),
-                    "tunnel", "--no-autoupdate", "run", "--token", token
-            );
+            logger.info("Starting Cloudflared tunnel " + tunnel.getDisplayName() + "...");
+            List<String> command = new ArrayList<>();
+            if (cpuSlice >= 0) {
+                command.addAll(Arrays.asList("taskset", "-c", tunnel.getCpus())); // Execs cloudflared, so the PID stays the same
+            }
+            command.addAll(Arrays.asList(binaryPath.toAbsolutePath().toString(), "tunnel", "--no-autoupdate"));
+            if (metricsPort > 0) {
+                command.add("--metrics");
+                command.add("127.0.0.1:" + metricsPort);
+            }
+            command.addAll(profile.getTunnelArguments());
+            if (config.isIngressToken(tunnel.getToken())) {
+                // One process for every hostname in the generated ingress rules
+                command.addAll(Arrays.asList("--config", IngressConfig.getConfigPath(rootDir.resolve("ingress")).toAbsolutePath().toString(),
+                        "run", tunnel.getToken()));
+            } else {
+                command.addAll(Arrays.asList("run", "--token", tunnel.getToken()));
+            }
+            ProcessBuilder pb = new ProcessBuilder(command);
             pb.directory(rootDir.toFile());
-            
-            Process p = pb.start();
-            
-            // Log output in background threads
-            inheritIO(p.getInputStream(), "INFO");
-            inheritIO(p.getErrorStream(), "ERROR");
+            pb.environment().putAll(profile.getEnvironment()); // e.g. GOMAXPROCS/GOMEMLIMIT to keep cloudflared off the tick loop
+            pb.redirectErrorStream(true); // cloudflared logs to stderr; one pipe per tunnel is enough
+            if (config.isAdoptionEnabled()) {
+                // A process writing into a pipe would die with it when the JVM goes away; a file survives, and
+                // the log pump tails it just the same
+                Path logsDir = rootDir.resolve("logs");
+                Files.createDirectories(logsDir);
+                logFile = Files.createTempFile(logsDir, tunnel.getName().replace('#', '-') + "-", ".log");
+                output = new FileInputStream(logFile.toFile());
+                pb.redirectOutput(logFile.toFile());
+            }
 
-            processes.put(token, p);
-            logger.info("Started Cloudflared process for token ending in ..." + (token.length() > 5 ? token.substring(token.length() - 5) : token));
+            Process p = pb.start();
+            tunnel.setLogFile(logFile);
+            attach(tunnel, p, output != null ? output : p.getInputStream(), Collections.emptyList(), version, metricsPort, ports,
+                    cpuSlice, cpuPool);
+            if (tunnel.getRestartCount() == 0) {
+                logger.info("Started Cloudflared process for " + tunnel.getDisplayName() + " in " + tunnel.getTimeToLaunchMillis() + "ms");
+            } else {
+                logger.info("Restarted Cloudflared process for " + tunnel.getDisplayName() + ".");
+            }
+            return true;
 
         } catch (IOException e) {
+            closeQuietly(output);
+            deleteQuietly(logFile);
+            ports.release(metricsPort);
+            if (cpuSlice >= 0) {
+                cpuPool.release(cpuSlice);
+            }
             logger.severe("Failed to start cloudflared: " + e.getMessage());
+            if (tunnel.getState() == TunnelState.RESTARTING && tunnels.get(tunnel.getKey()) == tunnel) {
+                supervisor.restartFailed(tunnel, e); // Stays tracked and is retried with backoff
+            } else {
+                tunnels.remove(tunnel.getKey(), tunnel);
+                tunnel.markFailed(e);
+            }
+            return false;
+        }
+    }
+
+    // Wires a running process into its tunnel: lease release on exit, log pump, supervisor and the state file
+    private void attach(Tunnel tunnel, Process p, InputStream output, List<String> replay, String version, int metricsPort,
+                        MetricsPortPool ports, int cpuSlice, CpuSetPool cpuPool) {
+        if (metricsPort > 0) {
+            p.onExit().thenRun(() -> ports.release(metricsPort));
+        }
+        if (cpuSlice >= 0) {
+            p.onExit().thenRun(() -> cpuPool.release(cpuSlice));
+        }
+
+        tunnel.markLaunched(p, version);
+
+        // Keep recent output, track connection registration and copy it to the console from the shared log pump.
+        // Replayed lines of an adopted process were already shown by the instance that started it.
+        CloudflaredLogParser parser = new CloudflaredLogParser(tunnel);
+        LogRingBuffer buffer = tunnel.getLogBuffer();
+        for (String line : replay) {
+            buffer.add(line);
+            parser.accept(line);
+        }
+        logPump.register(p, output, line -> {
+            buffer.add(line);
+            parser.accept(line);
+            console.forward(tunnel, line);
+        });
+        supervisor.watch(tunnel, p);
+        Path logFile = tunnel.getLogFile();
+        p.onExit().thenRun(() -> {
+            saveState();
+            if (logFile != null && !scheduler.isShutdown()) {
+                // Once the pump has drained it
+                scheduler.schedule(() -> deleteQuietly(logFile), 5, TimeUnit.SECONDS);
+            }
+        });
+        saveState();
+    }
+
+    // Records the running processes so the next start can adopt them; skipped once this manager has detached,
+    // since the state file then belongs to the next instance
+    private void saveState() {
+        synchronized (stateFile) {
+            if (detached) {
+                return;
+            }
+            List<ProcessStateFile.Entry> entries = new ArrayList<>();
+            if (config.isAdoptionEnabled()) {
+                for (Tunnel tunnel : getTunnels()) {
+                    Process p = tunnel.getProcess();
+                    Path logFile = tunnel.getLogFile();
+                    Optional<Instant> started = p != null ? p.toHandle().info().startInstant() : Optional.empty();
+                    if (!tunnel.isAlive() || logFile == null || started.isEmpty()) {
+                        continue;
+                    }
+                    Path binary = binaryFor(tunnel.getVersion());
+                    entries.add(new ProcessStateFile.Entry(p.pid(), started.get().toEpochMilli(), ProcessStateFile.fingerprint(tunnel.getToken()),
+                            tunnel.getIndex(), tunnel.getReplica(), binary.toAbsolutePath().toString(), binaryHash(binary), tunnel.getVersion(),
+                            tunnel.getMetrics().getPort(), tunnel.getCpus(), tunnel.getProfile() != null ? tunnel.getProfile().getName() : null,
+                            logFile.toAbsolutePath().toString()));
+                }
+            }
+            try {
+                stateFile.save(entries);
+            } catch (IOException e) {
+                logger.warning("Could not write processes.state: " + e.getMessage());
+            }
+        }
+    }
+
+    // Takes over cloudflared processes left running by an earlier instance (plugin reload or crash) that still
+    // match config.yml and the binary they were started from and report ready. Every other process running one
+    // of our binaries, whether recorded or not, is stopped so the coming start does not run duplicates.
+    private void adoptSurvivors() {
+        Map<String, TokenEntry> byFingerprint = new HashMap<>();
+        for (TokenEntry entry : config.getTokenEntries()) {
+            byFingerprint.put(ProcessStateFile.fingerprint(entry.getToken()), entry);
+        }
+        Set<Long> adopted = new HashSet<>();
+        Set<Long> ignored = new HashSet<>();
+        List<ProcessHandle> leftovers = new ArrayList<>();
+        for (ProcessStateFile.Entry entry : stateFile.load()) {
+            ProcessHandle handle = ProcessHandle.of(entry.pid).filter(ProcessHandle::isAlive).orElse(null);
+            if (handle == null) {
+                continue; // Exited meanwhile
+            }
+            if (handle.info().startInstant().map(i -> i.toEpochMilli() != entry.startedMillis).orElse(true)) {
+                ignored.add(entry.pid); // The PID now belongs to an unrelated process
+                continue;
+            }
+            TokenEntry token = byFingerprint.get(entry.tokenFingerprint);
+            String problem = adoptionProblem(entry, handle, token);
+            if (problem == null && adopt(entry, handle, token)) {
+                adopted.add(entry.pid);
+            } else {
+                logger.info("Stopping leftover Cloudflared process " + entry.pid + " (" + (problem != null ? problem : "could not be adopted") + ").");
+                leftovers.add(handle);
+            }
+        }
+
+        String root = rootDir.toAbsolutePath().normalize() + File.separator;
+        ProcessHandle.allProcesses()
+                .filter(h -> !adopted.contains(h.pid()) && !ignored.contains(h.pid()) && !leftovers.contains(h))
+                .filter(h -> h.info().command().map(command -> command.startsWith(root)).orElse(false))
+                .forEach(h -> {
+                    logger.info("Stopping unknown Cloudflared process " + h.pid() + " running " + h.info().command().orElse("?") + ".");
+                    leftovers.add(h);
+                });
+        if (!leftovers.isEmpty()) {
+            reap(leftovers);
+        }
+        if (!adopted.isEmpty()) {
+            logger.info("Adopted " + adopted.size() + " running Cloudflared process(es) from a previous start.");
+        }
+        saveState();
+        deleteUnusedLogs();
+    }
+
+    // Why a recorded process must not be adopted, or null if it can be
+    private String adoptionProblem(ProcessStateFile.Entry entry, ProcessHandle handle, TokenEntry token) {
+        if (!config.isAdoptionEnabled()) {
+            return "adoption disabled";
+        }
+        if (token == null || entry.replica > token.getReplicas()) {
+            return "no longer in config.yml";
+        }
+        if (tunnels.containsKey(Tunnel.replicaKey(token.getToken(), entry.replica))) {
+            return "duplicate";
+        }
+        if (ingressRewritten && config.isIngressToken(token.getToken())) {
+            return "ingress rules changed";
+        }
+        Optional<String[]> arguments = handle.info().arguments();
+        if (arguments.isPresent() && !Arrays.asList(arguments.get()).contains(token.getToken())) {
+            return "token mismatch";
+        }
+        Path binary = Paths.get(entry.binary).normalize();
+        Optional<String> command = handle.info().command();
+        boolean interpreted = arguments.isPresent() && arguments.get().length > 0
+                && Paths.get(arguments.get()[0]).normalize().equals(binary); // Wrapper script run by its interpreter
+        if (command.isPresent() && !Paths.get(command.get()).normalize().equals(binary) && !interpreted) {
+            return "different binary";
+        }
+        if (!Files.exists(binary) || !Objects.equals(binaryHash(binary), entry.binarySha256)) {
+            return "binary changed";
+        }
+        if (entry.logFile == null || !Files.exists(Paths.get(entry.logFile))) {
+            return "log file missing";
+        }
+        if (entry.metricsPort > 0 && !isReady(entry.metricsPort)) {
+            return "not connected";
+        }
+        return null;
+    }
+
+    // cloudflared's /ready endpoint answers 200 once at least one edge connection is registered
+    private static boolean isReady(int metricsPort) {
+        try {
+            HttpURLConnection conn = (HttpURLConnection) new URL("http://127.0.0.1:" + metricsPort + "/ready").openConnection();
+            conn.setConnectTimeout(2000);
+            conn.setReadTimeout(2000);
+            try {
+                return conn.getResponseCode() == HttpURLConnection.HTTP_OK;
+            } finally {
+                conn.disconnect();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private boolean adopt(ProcessStateFile.Entry entry, ProcessHandle handle, TokenEntry token) {
+        Path logFile = Paths.get(entry.logFile);
+        FileInputStream output = null;
+        List<String> replay;
+        try {
+            // Replay the end of the log to restore the connection state and fill the log buffer
+            output = new FileInputStream(logFile.toFile());
+            replay = readTail(output, MAX_LOG_REPLAY_BYTES);
+        } catch (IOException e) {
+            closeQuietly(output);
+            return false;
+        }
+        Tunnel tunnel = new Tunnel(token.getToken(), entry.index, entry.replica, config.getLogBufferLines());
+        MetricsPortPool ports = metricsPorts;
+        if (entry.metricsPort > 0) {
+            ports.reserve(entry.metricsPort);
+        }
+        tunnel.getMetrics().setPort(entry.metricsPort);
+        CpuSetPool cpuPool = cpuSets;
+        int cpuSlice = cpuPool != null && entry.cpus != null ? cpuPool.reserve(entry.cpus) : -1;
+        tunnel.setCpus(entry.cpus);
+        LaunchProfile profile = entry.profile != null ? config.getProfile(entry.profile) : null;
+        tunnel.setProfile(profile != null ? profile : config.resolveProfile(token));
+        tunnel.setLogFile(logFile);
+        tunnels.put(tunnel.getKey(), tunnel);
+        attach(tunnel, new AdoptedProcess(handle), output, replay, entry.version, entry.metricsPort, ports, cpuSlice, cpuPool);
+        tunnel.markAdopted();
+        logger.info("Adopted " + tunnel.getDisplayName() + " (pid " + entry.pid + ", " + (entry.version != null ? entry.version : "legacy binary") + ").");
+        return true;
+    }
+
+    // The complete lines among the last maxBytes of a log file; the stream is left right after them for the pump
+    private static List<String> readTail(FileInputStream in, long maxBytes) throws IOException {
+        FileChannel channel = in.getChannel();
+        long end = channel.size();
+        long start = Math.max(0, end - maxBytes);
+        channel.position(start);
+        byte[] tail = in.readNBytes((int) (end - start));
+        int length = tail.length;
+        while (length > 0 && tail[length - 1] != '\n') {
+            length--;
+        }
+        channel.position(start + length);
+        List<String> lines = new ArrayList<>(Arrays.asList(new String(tail, 0, length, StandardCharsets.UTF_8).split("\r?\n")));
+        if (start > 0 || (lines.size() == 1 && lines.get(0).isEmpty())) {
+            lines.remove(0); // Cut mid-line, or nothing at all
+        }
+        return lines;
+    }
+
+    // Same as stopAll, for processes that are not attached to a tunnel
+    private void reap(List<ProcessHandle> handles) {
+        List<CompletableFuture<ProcessHandle>> exits = new ArrayList<>();
+        for (ProcessHandle handle : handles) {
+            handle.destroy();
+            exits.add(handle.onExit());
+        }
+        try {
+            CompletableFuture.allOf(exits.toArray(new CompletableFuture<?>[0])).get(config.getShutdownTimeoutSeconds(), TimeUnit.SECONDS);
+        } catch (TimeoutException | ExecutionException ignored) {
+            // Killed below
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (ProcessHandle handle : handles) {
+            if (handle.isAlive()) {
+                handle.destroyForcibly();
+            }
+        }
+    }
+
+    private void deleteUnusedLogs() {
+        Path logsDir = rootDir.resolve("logs");
+        if (!Files.isDirectory(logsDir)) {
+            return;
+        }
+        Set<Path> inUse = new HashSet<>();
+        for (Tunnel tunnel : tunnels.values()) {
+            if (tunnel.getLogFile() != null) {
+                inUse.add(tunnel.getLogFile().toAbsolutePath());
+            }
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(logsDir, "*.log")) {
+            for (Path file : files) {
+                if (!inUse.contains(file.toAbsolutePath())) {
+                    deleteQuietly(file);
+                }
+            }
+        } catch (IOException e) {
+            logger.warning("Could not clean up old log files: " + e.getMessage());
+        }
+    }
+
+    private Path binaryFor(String version) {
+        return version != null ? getBinaryPath(version) : rootDir.resolve(getBinaryName());
+    }
+
+    // SHA-256 of a binary, from its manifest when unchanged since it was last hashed
+    private String binaryHash(Path binary) {
+        HashManifest manifest = new HashManifest(binary);
+        String hash = manifest.getVerifiedHash();
+        if (hash == null && Files.exists(binary)) {
+            try {
+                hash = BridgeUtils.calculateSha256(binary);
+                manifest.record(hash);
+            } catch (Exception e) {
+                return null;
+            }
+        }
+        return hash;
+    }
+
+    private static void closeQuietly(InputStream in) {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    public BridgeConfig getConfig() {
+        return config;
+    }
+
+    public List<Tunnel> getTunnels() {
+        List<Tunnel> result = new ArrayList<>(tunnels.values());
+        result.sort(Comparator.comparingInt(Tunnel::getIndex).thenComparingInt(Tunnel::getReplica));
+        return result;
+    }
+
+    // Human-readable status, one line per tunnel, with legacy color codes
+    public List<String> getStatusLines() {
+        List<String> lines = new ArrayList<>();
+        for (Tunnel tunnel : getTunnels()) {
+            StringBuilder line = new StringBuilder();
+            line.append("§f").append(tunnel.getDisplayName()).append(' ')
+                    .append(tunnel.getState() == TunnelState.READY ? "§a" : "§e").append(tunnel.getState())
+                    .append(" §7conns=").append(tunnel.getActiveConnections());
+            if (tunnel.getLocation() != null) {
+                line.append(' ').append(tunnel.getLocation()).append('/').append(tunnel.getProtocol());
+            }
+            if (tunnel.getVersion() != null) {
+                line.append(" v").append(tunnel.getVersion());
+            }
+            if (tunnel.getCpus() != null) {
+                line.append(" cpus=").append(tunnel.getCpus());
+            }
+            if (tunnel.getProfile() != null) {
+                line.append(" profile=").append(tunnel.getProfile().getName());
+            }
+            if (tunnel.isAdopted()) {
+                line.append(" adopted");
+            }
+            if (config.isIngressToken(tunnel.getToken())) {
+                line.append(" ingress=").append(config.getIngress().getRuleCount()).append(" hostname(s)");
+            }
+            ProcessUsage usage = tunnel.getUsage();
+            if (tunnel.isAlive() && usage.isAvailable()) {
+                line.append(String.format(Locale.ROOT, " cpu=%.1f%% (avg %.1f%%)", usage.getCpuPercent(), usage.getAverageCpuPercent()));
+                if (usage.getRssBytes() >= 0) {
+                    line.append(" rss=").append(formatBytes(usage.getRssBytes()))
+                            .append(" (peak ").append(formatBytes(usage.getPeakRssBytes())).append(')');
+                }
+            }
+            line.append(" restarts=").append(tunnel.getRestartCount())
+                    .append(" downtime=").append(tunnel.getDowntimeMillis()).append("ms");
+            if (tunnel.getLastRecoveryMillis() >= 0) {
+                line.append(" last-recovery=").append(tunnel.getLastRecoveryMillis()).append("ms");
+            }
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    // Throughput, latency and error rates from each tunnel's metrics endpoint, plus a total line
+    public List<String> getStatsLines() {
+        List<String> lines = new ArrayList<>();
+        double requests = 0, requestRate = 0, errors = 0, errorRate = 0, bytesIn = 0, bytesOut = 0, rttSum = 0;
+        int rttCount = 0, reporting = 0;
+        for (Tunnel tunnel : getTunnels()) {
+            TunnelMetrics m = tunnel.getMetrics();
+            if (!m.isAvailable()) {
+                lines.add("§f" + tunnel.getDisplayName() + " §7no metrics yet" + (m.getPort() > 0 ? "" : " (metrics disabled)"));
+                continue;
+            }
+            lines.add(String.format(Locale.ROOT, "§f%s §7req=%.0f (§a%.1f/s§7) err=%.0f (§c%.2f/s§7, %.1f%%) 5xx=%.0f active=%.0f conns=%.0f rtt=%s in=%s/s out=%s/s",
+                    tunnel.getDisplayName(), m.getTotalRequests(), m.getRequestsPerSecond(), m.getRequestErrors(),
+                    m.getErrorsPerSecond(), m.getErrorRatePercent(), m.getServerErrors(), m.getConcurrentRequests(),
+                    m.getHaConnections(), m.getRttMillis() >= 0 ? String.format(Locale.ROOT, "%.0fms", m.getRttMillis()) : "n/a",
+                    formatBytes(m.getBytesReceivedPerSecond()), formatBytes(m.getBytesSentPerSecond())));
+            reporting++;
+            requests += m.getTotalRequests();
+            requestRate += m.getRequestsPerSecond();
+            errors += m.getRequestErrors();
+            errorRate += m.getErrorsPerSecond();
+            bytesIn += m.getBytesReceivedPerSecond();
+            bytesOut += m.getBytesSentPerSecond();
+            if (m.getRttMillis() >= 0) {
+                rttSum += m.getRttMillis();
+                rttCount++;
+            }
+        }
+        if (reporting > 1) {
+            lines.add(String.format(Locale.ROOT, "§eTotal §7req=%.0f (§a%.1f/s§7) err=%.0f (§c%.2f/s§7, %.1f%%) rtt=%s in=%s/s out=%s/s",
+                    requests, requestRate, errors, errorRate, requests > 0 ? errors * 100.0 / requests : 0,
+                    rttCount > 0 ? String.format(Locale.ROOT, "%.0fms", rttSum / rttCount) : "n/a",
+                    formatBytes(bytesIn), formatBytes(bytesOut)));
+        }
+        OriginRelay currentRelay = relay;
+        if (currentRelay != null) {
+            for (Map.Entry<RelayRoute, OriginStats> entry : currentRelay.getStats().entrySet()) {
+                OriginStats s = entry.getValue();
+                lines.add(String.format(Locale.ROOT, "§eRelay %s §7active=%d conns=%d failed=%d to origin=%s from origin=%s connect=%s ttfb=%s",
+                        entry.getKey().getName(), s.getActiveConnections(), s.getConnections(), s.getFailedConnects(),
+                        formatBytes(s.getBytesToOrigin()), formatBytes(s.getBytesFromOrigin()),
+                        formatLatency(s.getConnectMillisAverage(), s.getConnectMillisMax()),
+                        formatLatency(s.getFirstByteMillisAverage(), s.getFirstByteMillisMax())));
+            }
         }
+        long dropped = console.getDroppedQueueFullCount() + console.getDroppedRateLimitedCount();
+        if (console.isForwarding() || dropped > 0) {
+            lines.add("§eConsole §7forwarded=" + console.getForwardedCount() + " collapsed=" + console.getCollapsedCount()
+                    + " dropped=" + dropped + " (queue full " + console.getDroppedQueueFullCount()
+                    + ", rate limit " + console.getDroppedRateLimitedCount() + ")");
+        }
+        return lines;
+    }
+
+    // "avg/max" or n/a before the first sample
+    private static String formatLatency(double averageMillis, double maxMillis) {
+        return averageMillis >= 0 ? String.format(Locale.ROOT, "%.1f/%.1fms", averageMillis, maxMillis) : "n/a";
+    }
+
+    private static String formatBytes(double bytes) {
+        if (bytes >= 1 << 20) {
+            return String.format(Locale.ROOT, "%.1fMB", bytes / (1 << 20));
+        }
+        if (bytes >= 1 << 10) {
+            return String.format(Locale.ROOT, "%.1fKB", bytes / (1 << 10));
+        }
+        return String.format(Locale.ROOT, "%.0fB", bytes);
+    }
+
+    // Looks a tunnel up by name ("tunnel-2"), index ("2") or token suffix
+    public Tunnel findTunnel(String id) {
+        for (Tunnel tunnel : tunnels.values()) {
+            if (tunnel.getName().equalsIgnoreCase(id)
+                    || (tunnel.getReplica() == 1 && String.valueOf(tunnel.getIndex()).equals(id))
+                    || (tunnel.getReplica() == 1 && id.length() >= 5 && tunnel.getToken().endsWith(id))) {
+                return tunnel;
+            }
+        }
+        return null;
     }
 
-    public void stop() {
+    public CompletableFuture<Void> stop() {
+        return submit("Stop", () -> {
+            stopNow();
+            return null;
+        });
+    }
+
+    private void stopNow() {
+        stopNow(System.nanoTime() + TimeUnit.SECONDS.toNanos(config.getShutdownTimeoutSeconds()));
+    }
+
+    private void stopNow(long deadlineNanos) {
         logger.info("Stopping all Cloudflared processes...");
-        for (Map.Entry<String, Process> entry : processes.entrySet()) {
-            Process p = entry.getValue();
+        long startedAt = System.nanoTime();
+        List<Tunnel> stopping = new ArrayList<>(tunnels.values());
+        tunnels.clear();
+        stopping.addAll(replacements); // Half-finished rolling upgrades
+        replacements.clear();
+        int killed = stopAll(stopping, deadlineNanos);
+        logger.info("All Cloudflared processes stopped in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt) + "ms"
+                + (killed > 0 ? " (" + killed + " killed at the " + config.getShutdownTimeoutSeconds() + "s deadline)." : "."));
+    }
+
+    // Signals every process at once and waits for their exits together until the deadline; whatever is
+    // still running then is killed. Returns how many had to be killed. The tunnels must already be removed
+    // from the map so the supervisor treats the exits as requested.
+    private int stopAll(Collection<Tunnel> stopping, long deadlineNanos) {
+        List<Process> running = new ArrayList<>();
+        for (Tunnel tunnel : stopping) {
+            synchronized (tunnel) {
+                Process p = tunnel.getProcess();
+                if (p == null) {
+                    tunnel.markCancelled();
+                } else if (p.isAlive()) {
+                    p.toHandle().destroy(); // Graceful first; see stopAsync for why not Process.destroy()
+                    running.add(p);
+                }
+            }
+        }
+        CompletableFuture<?>[] exits = new CompletableFuture<?>[running.size()];
+        for (int i = 0; i < exits.length; i++) {
+            exits[i] = running.get(i).onExit();
+        }
+        try {
+            CompletableFuture.allOf(exits).get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException ignored) {
+            // Killed below
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int killed = 0;
+        for (Process p : running) {
             if (p.isAlive()) {
-                p.destroy(); // Try graceful first
-                try {
-                    // Give it a moment to shut down
-                    if (!p.waitFor(5, java.util.concurrent.TimeUnit.SECONDS)) {
+                p.destroyForcibly();
+                killed++;
+            }
+        }
+        return killed;
+    }
+
+    private int stopAll(Collection<Tunnel> stopping) {
+        return stopAll(stopping, System.nanoTime() + TimeUnit.SECONDS.toNanos(config.getShutdownTimeoutSeconds()));
+    }
+
+    // Re-reads config.yml and reconciles the running tunnels with its tokenlist: removed tokens are stopped,
+    // added tokens are started and tunnels whose token is unchanged keep running untouched, unless their
+    // launch profile changed, in which case they are rolled onto new processes like in an upgrade.
+    // Other settings take effect for everything started or restarted afterwards.
+    public CompletableFuture<String> reload() {
+        return submit("Reload", this::reloadNow);
+    }
+
+    private String reloadNow() {
+        Path configFile = rootDir.resolve("config.yml");
+        BridgeConfig previous = config;
+        BridgeConfig updated;
+        try {
+            updated = BridgeConfig.load(configFile);
+        } catch (Exception e) {
+            logger.severe("Error reloading config.yml, keeping the current configuration: " + e.getMessage());
+            return "§cconfig.yml could not be parsed: " + e.getMessage();
+        }
+        config = updated;
+        console.configure(updated);
+        configureRelay(previous);
+        configureWatcher();
+        boolean ingressChanged = writeIngress(updated);
+        warnUnknownProfiles(updated);
+        if (previous.getMetricsPortRangeStart() != updated.getMetricsPortRangeStart()
+                || previous.getMetricsPortRangeEnd() != updated.getMetricsPortRangeEnd()) {
+            metricsPorts = new MetricsPortPool(updated.getMetricsPortRangeStart(), updated.getMetricsPortRangeEnd());
+        }
+        if (previous.isCpuPinning() != updated.isCpuPinning() || previous.getCpusPerReplica() != updated.getCpusPerReplica()) {
+            cpuSets = createCpuSetPool(updated);
+        }
+
+        if (tunnels.isEmpty()) {
+            logger.info("Reloaded config.yml (" + updated.getTokens().size() + " token(s), no tunnels running).");
+            return "§aReloaded config.yml. No tunnels are running.";
+        }
+
+        Map<String, TokenEntry> wanted = new LinkedHashMap<>();
+        for (TokenEntry entry : updated.getTokenEntries()) {
+            wanted.put(entry.getToken(), entry);
+        }
+        List<Tunnel> removed = new ArrayList<>();
+        for (Tunnel tunnel : getTunnels()) {
+            TokenEntry entry = wanted.get(tunnel.getToken());
+            if ((entry == null || tunnel.getReplica() > entry.getReplicas()) && tunnels.remove(tunnel.getKey(), tunnel)) {
+                removed.add(tunnel);
+            }
+        }
+        int unchanged = tunnels.size();
+
+        for (Tunnel tunnel : removed) {
+            logger.info("Stopping " + tunnel.getDisplayName() + " (removed from config.yml).");
+        }
+        stopAll(removed);
+        List<Tunnel> added = launch(new ArrayList<>(wanted.values()), updated.getStartBurst(), updated.getStartRefillPerSecond());
+        List<Tunnel> reprofiled = rollable(tunnel -> !added.contains(tunnel) && tunnel.getProfile() != null
+                && !tunnel.getProfile().sameLaunchAs(updated.resolveProfile(wanted.get(tunnel.getToken()))));
+        // cloudflared only reads its ingress rules at start, so new rules are applied by rolling onto a new process
+        List<Tunnel> reingressed = ingressChanged ? rollable(tunnel -> !added.contains(tunnel) && !reprofiled.contains(tunnel)
+                && updated.isIngressToken(tunnel.getToken())) : Collections.emptyList();
+        String summary = "Reloaded config.yml: " + added.size() + " started, " + removed.size() + " stopped, "
+                + (unchanged - reprofiled.size() - reingressed.size()) + " unchanged";
+        if (!reprofiled.isEmpty()) {
+            summary += ", " + reprofiled.size() + " rolling onto a changed launch profile";
+            roll(reprofiled, "launch profile changed").thenAccept(rolled -> logger.info("Relaunched " + rolled + "/" + reprofiled.size()
+                    + " tunnel(s) with their new launch profile."));
+        }
+        if (!reingressed.isEmpty()) {
+            summary += ", " + reingressed.size() + " rolling onto the new ingress rules";
+            roll(reingressed, "ingress rules changed").thenAccept(rolled -> logger.info("Relaunched " + rolled + "/" + reingressed.size()
+                    + " ingress process(es) with the new rules."));
+        }
+        summary += ".";
+        logger.info(summary);
+        return "§a" + summary;
+    }
+
+    // Runs the given number of connectors for a tunnel's token from now on: extra replicas are stopped
+    // (highest first) and missing ones started with the usual stagger. Lasts until the next reload.
+    public CompletableFuture<String> scale(String id, int replicas) {
+        return submit("Scale", () -> scaleNow(id, replicas));
+    }
+
+    private String scaleNow(String id, int replicas) {
+        Tunnel target = findTunnel(id);
+        if (target == null) {
+            return "§cUnknown tunnel: " + id;
+        }
+        int count = Math.max(1, replicas);
+        List<Tunnel> removed = new ArrayList<>();
+        for (Tunnel tunnel : getTunnels()) {
+            if (tunnel.getToken().equals(target.getToken()) && tunnel.getReplica() > count
+                    && tunnels.remove(tunnel.getKey(), tunnel)) {
+                removed.add(tunnel);
+            }
+        }
+        stopAll(removed);
+        TokenEntry entry = config.getTokenEntry(target.getToken());
+        entry = entry != null ? entry.withReplicas(count) : new TokenEntry(target.getToken(), count);
+        List<Tunnel> added = launch(Collections.singletonList(entry), config.getStartBurst(), config.getStartRefillPerSecond());
+        String summary = "Scaled tunnel-" + target.getIndex() + " to " + count + " replica(s): "
+                + added.size() + " started, " + removed.size() + " stopped.";
+        logger.info(summary);
+        return "§a" + summary;
+    }
+
+    // Restarts one tunnel. A running process is replaced gracefully (the new one takes over once it has
+    // registered a connection); a tunnel that is down, crash-looping or waiting to start is relaunched.
+    public CompletableFuture<String> restart(String id) {
+        return submit("Restart", () -> restartNow(id)).thenCompose(result -> result);
+    }
+
+    private CompletableFuture<String> restartNow(String id) {
+        Tunnel tunnel = findTunnel(id);
+        if (tunnel == null) {
+            return CompletableFuture.completedFuture("§cUnknown tunnel: " + id);
+        }
+        if (tunnel.isAlive()) {
+            List<Tunnel> targets = rollable(t -> t == tunnel);
+            if (targets.isEmpty()) {
+                return CompletableFuture.completedFuture("§e" + tunnel.getDisplayName() + " is already being replaced.");
+            }
+            return replace(tunnel, "restart requested").thenApply(ok -> ok
+                    ? "§a" + tunnel.getDisplayName() + " restarted."
+                    : "§c" + tunnel.getDisplayName() + " could not be restarted; the old process keeps running.");
+        }
+        if (tunnels.remove(tunnel.getKey(), tunnel)) {
+            stopAll(Collections.singletonList(tunnel));
+        }
+        TokenEntry entry = config.getTokenEntry(tunnel.getToken());
+        entry = entry != null ? entry : new TokenEntry(tunnel.getToken(), tunnel.getReplica());
+        launch(Collections.singletonList(entry), config.getStartBurst(), config.getStartRefillPerSecond());
+        return CompletableFuture.completedFuture("§aRelaunching " + tunnel.getDisplayName() + ".");
+    }
+
+    private CpuSetPool createCpuSetPool(BridgeConfig config) {
+        if (!config.isCpuPinning()) {
+            return null;
+        }
+        if (!CpuSetPool.isSupported()) {
+            logger.warning("replicas.cpu-pinning needs Linux with taskset installed. Replicas will not be pinned.");
+            return null;
+        }
+        return new CpuSetPool(config.getCpusPerReplica());
+    }
+
+    // Asks the process to exit and kills it if it is still running after the timeout
+    private CompletableFuture<Void> stopAsync(Tunnel tunnel, long timeoutSeconds) {
+        Process p;
+        synchronized (tunnel) {
+            p = tunnel.getProcess();
+            if (p == null || !p.isAlive()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            // Through the handle: Process.destroy() also closes our end of the output pipe, and cloudflared
+            // would die of SIGPIPE on its first log line while draining
+            p.toHandle().destroy();
+        }
+        return p.onExit()
+                .orTimeout(timeoutSeconds, TimeUnit.SECONDS)
+                .handle((exited, error) -> {
+                    if (error != null) {
                         p.destroyForcibly();
                     }
-                } catch (InterruptedException e) {
-                    p.destroyForcibly();
+                    return null;
+                });
+    }
+
+    // Moves every running tunnel onto the current binary, one tunnel at a time: a replacement process is
+    // started from the new version, and only once it has registered an edge connection does it take over the
+    // tunnel and the old process get stopped. A replacement that fails to register is discarded and the old
+    // process keeps serving. Runs on the lifecycle thread, from checkAndUpgrade() and launch().
+    private CompletableFuture<String> upgrade() {
+        List<Tunnel> outdated = rollable(tunnel -> !Objects.equals(tunnel.getVersion(), currentVersion));
+        if (outdated.isEmpty()) {
+            return CompletableFuture.completedFuture("All running tunnels already use Cloudflared " + currentVersion + ".");
+        }
+
+        logger.info("Rolling " + outdated.size() + " tunnel(s) over to Cloudflared " + currentVersion + "...");
+        long startedAt = System.nanoTime();
+        return roll(outdated, "upgrade to " + currentVersion).thenApply(upgraded -> {
+            String summary = "Rolling upgrade to " + currentVersion + " finished: " + upgraded + "/" + outdated.size()
+                    + " tunnel(s) upgraded in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt) + "ms.";
+            logger.info(summary);
+            pruneVersions();
+            return summary;
+        });
+    }
+
+    // Gracefully replaces a tunnel whose process went over its resource limits with a fresh one
+    private void recycle(Tunnel tunnel) {
+        submit("Recycle", () -> {
+            List<Tunnel> targets = rollable(t -> t == tunnel);
+            return targets.isEmpty() ? null : roll(targets, "resource limit exceeded");
+        });
+    }
+
+    // Running tunnels matching the filter that are not already being replaced
+    private List<Tunnel> rollable(Predicate<Tunnel> filter) {
+        synchronized (upgradeLock) {
+            Set<String> replacing = new HashSet<>();
+            for (Tunnel replacement : replacements) {
+                replacing.add(replacement.getKey());
+            }
+            List<Tunnel> result = new ArrayList<>();
+            for (Tunnel tunnel : getTunnels()) {
+                if (tunnel.isAlive() && !replacing.contains(tunnel.getKey()) && filter.test(tunnel)) {
+                    result.add(tunnel);
+                }
+            }
+            return result;
+        }
+    }
+
+    // Replaces the tunnels one after another; completes with how many were replaced
+    private CompletableFuture<Integer> roll(List<Tunnel> targets, String reason) {
+        int[] replaced = new int[1];
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+        for (Tunnel tunnel : targets) {
+            chain = chain.thenCompose(v -> replace(tunnel, reason)).thenAccept(ok -> {
+                if (ok) {
+                    replaced[0]++;
                 }
+            });
+        }
+        return chain.thenApply(v -> replaced[0]);
+    }
+
+    private CompletableFuture<Boolean> replace(Tunnel old, String reason) {
+        if (tunnels.get(old.getKey()) != old || !old.isAlive()) {
+            return CompletableFuture.completedFuture(false);
+        }
+        Tunnel replacement = new Tunnel(old);
+        replacements.add(replacement);
+        logger.info("Starting replacement for " + old.getDisplayName() + " (" + reason + ")...");
+        LaunchProfile oldProfile = old.getProfile();
+        long drainSeconds = oldProfile != null ? oldProfile.getGracePeriodSeconds() + 5 : DRAIN_TIMEOUT_SECONDS;
+        boolean launched;
+        synchronized (replacement) {
+            // stop() may have taken the replacement out of the set in the meantime
+            launched = replacements.contains(replacement) && !shuttingDown && launchProcess(replacement);
+        }
+        if (!launched) {
+            replacements.remove(replacement);
+            return CompletableFuture.completedFuture(false);
+        }
+        return replacement.getReadyFuture()
+                .orTimeout(config.getReadyTimeoutSeconds(), TimeUnit.SECONDS)
+                .handle((ready, error) -> error == null && replacements.remove(replacement)
+                        && tunnels.replace(old.getKey(), old, replacement))
+                // Readiness completes on the log pump; the state file (and hashing binaries for it) must not stall it
+                .thenComposeAsync(swapped -> {
+                    if (!swapped) {
+                        replacements.remove(replacement);
+                        logger.warning("Replacement for " + old.getDisplayName() + " did not register a connection. Keeping the old process.");
+                        return stopAsync(replacement, STOP_TIMEOUT_SECONDS).thenApply(v -> false);
+                    }
+                    saveState();
+                    logger.info(replacement.getDisplayName() + " is serving from " + replacement.getVersion() + " after "
+                            + replacement.getTimeToReadyMillis() + "ms. Stopping the old process...");
+                    // Untracked now, so its exit is treated as requested; allow cloudflared's grace period to drain requests
+                    return stopAsync(old, drainSeconds).thenApply(v -> true);
+                }, lifecycle);
+    }
+
+    // Stops all tunnels and releases the manager's threads; the manager cannot be reused afterwards.
+    // Blocks the caller (plugin disable) until the tunnels are down, at most shutdown.timeout-seconds in
+    // total; queued lifecycle work is dropped.
+    public void shutdown() {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(config.getShutdownTimeoutSeconds());
+        shuttingDown = true;
+        ConfigWatcher watcher = configWatcher;
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException ignored) {
             }
         }
-        processes.clear();
-        logger.info("All Cloudflared processes stopped.");
+        lifecycle.shutdownNow();
+        try {
+            // A start in progress stops spawning once it sees shuttingDown; don't let it eat the deadline
+            lifecycle.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        stopNow(deadline);
+        closeRelay();
+        scheduler.shutdownNow();
+        console.close();
     }
 
-    private void checkForUpdatesAndInstall() throws IOException {
+    // Releases the manager's threads but leaves the cloudflared processes running for the next instance to adopt
+    // (plugin reload), so the tunnels stay up. Falls back to shutdown() when adoption is disabled.
+    public void detach() {
+        if (!config.isAdoptionEnabled()) {
+            shutdown();
+            return;
+        }
+        shuttingDown = true;
+        ConfigWatcher watcher = configWatcher;
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException ignored) {
+            }
+        }
+        lifecycle.shutdownNow();
+        try {
+            lifecycle.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Half-finished replacements and processes writing into a pipe (started before adoption was enabled)
+        // cannot be handed over
+        List<Tunnel> stopping = new ArrayList<>(replacements);
+        replacements.clear();
+        for (Tunnel tunnel : getTunnels()) {
+            if (tunnel.getLogFile() == null || !tunnel.isAlive()) {
+                tunnels.remove(tunnel.getKey(), tunnel);
+                stopping.add(tunnel);
+            }
+        }
+        stopAll(stopping);
+        synchronized (stateFile) {
+            saveState();
+            detached = true;
+        }
+        logger.info("Left " + tunnels.size() + " Cloudflared process(es) running for the next start to adopt.");
+        tunnels.clear();
+        closeRelay();
+        scheduler.shutdownNow();
+        console.close();
+    }
+
+    // The relay lives in this JVM, so it goes down with the manager even when the tunnels are left running
+    private void closeRelay() {
+        OriginRelay current = relay;
+        if (current != null) {
+            current.close();
+            relay = null;
+        }
+    }
+
+    // Makes sure the latest release is installed under versions/<version>/ and marks it current.
+    // Returns true if the current version changed, i.e. running tunnels are now outdated.
+    private boolean checkForUpdatesAndInstall() throws IOException {
         logger.info("Checking for Cloudflared updates...");
-        String jsonResponse = BridgeUtils.fetchUrl(GITHUB_API_URL);
-        JsonObject release = JsonParser.parseString(jsonResponse).getAsJsonObject();
-        
-        String assetName = getAssetName();
-        Path binaryPath = getBinaryPath();
+        long startedAt = System.nanoTime();
+        ReleaseInfo release = resolveRelease(getAssetName());
+        String assetName = release.getAssetName();
+        Path binaryPath = getBinaryPath(release.getVersion());
+        HashManifest manifest = new HashManifest(binaryPath);
         
         // Check hash from body
-        String expectedHash = extractHashFromBody(release.get("body").getAsString(), assetName);
+        String expectedHash = release.getExpectedHash();
         
         boolean needsInstall = true;
         
         if (Files.exists(binaryPath)) {
             if (expectedHash != null) {
                 try {
-                    String localHash = BridgeUtils.calculateSha256(binaryPath);
-                    if (localHash.equalsIgnoreCase(expectedHash)) {
+                    // Binaries unpacked from a .tgz can only be checked against the archive hash recorded at install time
+                    String localHash = manifest.getVerifiedAssetHash();
+                    String hashSource = "manifest";
+                    if (localHash == null && !BinaryInstaller.isArchive(assetName)) {
+                        localHash = BridgeUtils.calculateSha256(binaryPath);
+                        hashSource = "hashed " + (Files.size(binaryPath) >> 20) + " MB";
+                        manifest.record(localHash);
+                    }
+                    if (localHash != null && localHash.equalsIgnoreCase(expectedHash)) {
                         needsInstall = false;
-                        logger.info("Cloudflared is up to date.");
+                        logger.info("Cloudflared is up to date (" + release.getVersion() + ", verified in "
+                                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt) + "ms, " + hashSource + ").");
                     } else {
                         logger.info("Hash mismatch (Local: " + localHash + ", Expected: " + expectedHash + "). Deleting and re-downloading.");
+                        manifest.invalidate();
                         Files.delete(binaryPath);
                     }
                 } catch (Exception e) {
@@ -222,58 +1313,210 @@ public class CloudflaredManager {
         }
 
         if (needsInstall) {
-            logger.info("Downloading Cloudflared (" + assetName + ")...");
-            downloadAndInstall(release, assetName);
+            logger.info("Installing Cloudflared " + release.getVersion() + " (" + assetName + ") from " + release.getSourceName() + "...");
+            Files.createDirectories(binaryPath.getParent());
+            BinaryInstaller.Result result;
+            if (!config.getSharedCache().isEmpty() && expectedHash != null) {
+                // Only one server on the host downloads each release; the others link the verified copy
+                SharedBinaryCache cache = new SharedBinaryCache(SharedBinaryCache.resolveDir(config.getSharedCache()));
+                result = cache.install(release.getVersion(), expectedHash, getBinaryName(), binaryPath,
+                        cached -> downloadAndInstall(release, cached), logger);
+                cache.prune(2, logger);
+            } else {
+                result = downloadAndInstall(release, binaryPath);
+            }
+            manifest.record(result.getBinaryHash(), result.getAssetHash());
+            logger.info("Update check and install finished in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt) + "ms.");
         }
+
+        String previous = currentVersion;
+        if (release.getVersion().equals(previous)) {
+            return false;
+        }
+        writeCurrentVersion(release.getVersion());
+        logger.info("Cloudflared " + release.getVersion() + " is now current" + (previous != null ? " (was " + previous + ")." : "."));
+        pruneVersions();
+        return previous != null;
+    }
+
+    public CompletableFuture<String> checkAndUpgrade() {
+        return submit("Upgrade", () -> {
+            try {
+                checkForUpdatesAndInstall();
+            } catch (IOException e) {
+                logger.severe("Failed to check for updates: " + e.getMessage());
+                return CompletableFuture.completedFuture("Update check failed: " + e.getMessage());
+            }
+            return upgrade();
+        }).thenCompose(result -> result);
     }
 
-    private String extractHashFromBody(String body, String assetName) {
-        Pattern pattern = Pattern.compile(Pattern.quote(assetName) + "\s*:\s*([a-fA-F0-9]{64})");
-        Matcher matcher = pattern.matcher(body);
-        if (matcher.find()) {
-            return matcher.group(1);
+    // Tries each configured release source in order and returns the first that carries this platform's asset
+    private ReleaseInfo resolveRelease(String assetName) throws IOException {
+        IOException lastError = null;
+        for (ReleaseSource source : createReleaseSources()) {
+            try {
+                ReleaseInfo release = source.resolve(assetName);
+                if (release != null) {
+                    return release;
+                }
+                logger.info("Release source " + source.getName() + " does not carry " + assetName + ". Trying next source.");
+            } catch (IOException e) {
+                lastError = e;
+                logger.warning("Release source " + source.getName() + " failed: " + e.getMessage() + ". Trying next source.");
+            }
         }
-        return null;
+        throw lastError != null ? lastError : new IOException("No release source provides " + assetName + ".");
     }
 
-    private void downloadAndInstall(JsonObject release, String targetAssetName) throws IOException {
-        String downloadUrl = null;
-        for (JsonElement el : release.getAsJsonArray("assets")) {
-            JsonObject asset = el.getAsJsonObject();
-            if (asset.get("name").getAsString().equals(targetAssetName)) {
-                downloadUrl = asset.get("browser_download_url").getAsString();
-                break;
+    private List<ReleaseSource> createReleaseSources() {
+        List<ReleaseSource> sources = new ArrayList<>();
+        for (Map<String, Object> spec : config.getReleaseSources()) {
+            String type = String.valueOf(spec.get("type")).toLowerCase(Locale.ROOT);
+            switch (type) {
+                case "github":
+                    Object apiUrl = spec.get("api-url");
+                    sources.add(new GitHubReleaseSource(apiUrl != null ? apiUrl.toString() : GitHubReleaseSource.DEFAULT_API_URL,
+                            releaseCache, TimeUnit.MINUTES.toMillis(config.getReleaseCacheTtlMinutes()), logger));
+                    break;
+                case "mirror":
+                    if (spec.get("url") != null) {
+                        sources.add(new MirrorReleaseSource(spec.get("url").toString()));
+                    } else {
+                        logger.warning("Ignoring mirror release source without 'url'.");
+                    }
+                    break;
+                case "directory":
+                    if (spec.get("path") != null) {
+                        sources.add(new DirectoryReleaseSource(rootDir.resolve(spec.get("path").toString())));
+                    } else {
+                        logger.warning("Ignoring directory release source without 'path'.");
+                    }
+                    break;
+                default:
+                    logger.warning("Ignoring unknown release source type '" + type + "'.");
+            }
+        }
+        return sources;
+    }
+
+    private BinaryInstaller.Result downloadAndInstall(ReleaseInfo release, Path binaryPath) throws IOException {
+        String targetAssetName = release.getAssetName();
+        if (release.getLocalPath() != null) {
+            // Local source: install straight from disk without touching the network
+            BinaryInstaller.Result result;
+            try (InputStream in = Files.newInputStream(release.getLocalPath())) {
+                result = BinaryInstaller.install(in, targetAssetName, release.getExpectedHash(), binaryPath);
             }
+            logger.info("Cloudflared installed successfully from " + release.getSourceName() + ".");
+            return result;
         }
 
+        String downloadUrl = release.getDownloadUrl();
         if (downloadUrl == null) {
-            throw new IOException("Asset " + targetAssetName + " not found in latest release.");
+            throw new IOException("Asset " + targetAssetName + " not found in release " + release.getVersion() + ".");
+        }
+        if (release.getExpectedHash() == null) {
+            logger.warning("No published hash for " + targetAssetName + "; installing without verification.");
         }
 
-        Path tempPath = rootDir.resolve(targetAssetName);
-        BridgeUtils.downloadFile(downloadUrl, tempPath);
+        RangeDownloader downloader = new RangeDownloader(config.getDownloadConnections(),
+                (long) config.getDownloadChunkSizeMb() << 20, config.getDownloadRetries(),
+                BridgeUtils.CONNECT_TIMEOUT_MILLIS, BridgeUtils.READ_TIMEOUT_MILLIS);
+        RangeDownloader.Probe probe = downloader.probe(downloadUrl);
 
-        if (targetAssetName.endsWith(".tgz")) {
-            extractTarGz(tempPath, rootDir);
-            Files.delete(tempPath); 
-            Path extracted = rootDir.resolve("cloudflared");
-            if (!Files.exists(extracted)) {
-                throw new IOException("Extraction failed: 'cloudflared' binary not found.");
-            }
+        // Download into a part file, then one hashing/extracting pass over it
+        Path partFile = rootDir.resolve("cache").resolve(targetAssetName + ".part");
+        Files.createDirectories(partFile.getParent());
+        long startedAt = System.nanoTime();
+        if (probe.supportsRanges()) {
+            // Parallel chunks; an interrupted download resumes from the finished ones
+            downloader.download(probe, partFile);
+            logger.info("Downloaded " + (probe.getSize() >> 10) + " KB in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt)
+                    + "ms using up to " + config.getDownloadConnections() + " connections.");
         } else {
-            Path finalPath = getBinaryPath();
-            Files.move(tempPath, finalPath, StandardCopyOption.REPLACE_EXISTING);
+            // No range support: a single stream, retried from the start
+            downloader.downloadSingle(probe, partFile);
+            logger.info("Downloaded " + (Files.size(partFile) >> 10) + " KB in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt)
+                    + "ms (server does not support ranges).");
         }
-        
-        logger.info("Cloudflared installed successfully.");
+        BinaryInstaller.Result result;
+        try (InputStream in = Files.newInputStream(partFile)) {
+            result = BinaryInstaller.install(in, targetAssetName, release.getExpectedHash(), binaryPath);
+        } finally {
+            Files.deleteIfExists(partFile); // Never resume from bytes that failed verification
+        }
+        logger.info("Cloudflared installed successfully from " + release.getSourceName() + ".");
+        return result;
     }
 
+    // Binary new processes are started from: the current version, or the unversioned file older releases installed
     private Path getBinaryPath() {
-        String name = "cloudflared";
-        if (PlatformUtils.getOS() == PlatformUtils.OS.WINDOWS) {
-            name += ".exe";
+        String version = currentVersion;
+        return version != null ? getBinaryPath(version) : rootDir.resolve(getBinaryName());
+    }
+
+    // Each release gets its own directory so installing one never touches a file a running tunnel was started from
+    private Path getBinaryPath(String version) {
+        return rootDir.resolve("versions").resolve(version.replaceAll("[^A-Za-z0-9._-]", "_")).resolve(getBinaryName());
+    }
+
+    private String getBinaryName() {
+        return PlatformUtils.getOS() == PlatformUtils.OS.WINDOWS ? "cloudflared.exe" : "cloudflared";
+    }
+
+    private String readCurrentVersion() {
+        Path file = rootDir.resolve("versions").resolve("current");
+        try {
+            String version = Files.exists(file) ? Files.readString(file, StandardCharsets.UTF_8).trim() : "";
+            return !version.isEmpty() && Files.exists(getBinaryPath(version)) ? version : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void writeCurrentVersion(String version) throws IOException {
+        Path file = rootDir.resolve("versions").resolve("current");
+        Path tmp = file.resolveSibling("current.tmp");
+        Files.createDirectories(file.getParent());
+        Files.writeString(tmp, version, StandardCharsets.UTF_8);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        currentVersion = version;
+    }
+
+    // Deletes installed versions that are neither current nor still running, including the old unversioned binary
+    private void pruneVersions() {
+        Set<Path> inUse = new HashSet<>();
+        inUse.add(getBinaryPath().getParent());
+        for (Tunnel tunnel : tunnels.values()) {
+            if (tunnel.isAlive()) {
+                inUse.add(tunnel.getVersion() != null ? getBinaryPath(tunnel.getVersion()).getParent() : rootDir);
+            }
+        }
+        Path versionsDir = rootDir.resolve("versions");
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(versionsDir, Files::isDirectory)) {
+            for (Path dir : dirs) {
+                if (!inUse.contains(dir)) {
+                    deleteVersion(dir.resolve(getBinaryName()));
+                    Files.deleteIfExists(dir);
+                    logger.info("Removed unused Cloudflared version " + dir.getFileName() + ".");
+                }
+            }
+        } catch (IOException e) {
+            logger.warning("Could not prune old Cloudflared versions: " + e.getMessage());
+        }
+        if (currentVersion != null && !inUse.contains(rootDir)) {
+            try {
+                deleteVersion(rootDir.resolve(getBinaryName()));
+            } catch (IOException ignored) {
+                // Still locked by a process started before the upgrade (Windows)
+            }
         }
-        return rootDir.resolve(name);
+    }
+
+    private void deleteVersion(Path binary) throws IOException {
+        Files.deleteIfExists(binary.resolveSibling(binary.getFileName() + ".manifest"));
+        Files.deleteIfExists(binary);
     }
 
     private String getAssetName() {
@@ -295,40 +1538,4 @@ public class CloudflaredManager {
         
         return "cloudflared-linux-amd64";
     }
-    
-    private void extractTarGz(Path tarGzFile, Path outputDir) throws IOException {
-        try (InputStream fi = Files.newInputStream(tarGzFile);
-             BufferedInputStream bi = new BufferedInputStream(fi);
-             GzipCompressorInputStream gzi = new GzipCompressorInputStream(bi);
-             TarArchiveInputStream ti = new TarArchiveInputStream(gzi)) {
-
-            TarArchiveEntry entry;
-            while ((entry = ti.getNextTarEntry()) != null) {
-                Path entryPath = outputDir.resolve(entry.getName());
-                if (entry.isDirectory()) {
-                    Files.createDirectories(entryPath);
-                } else {
-                    Files.createDirectories(entryPath.getParent());
-                    try (OutputStream out = Files.newOutputStream(entryPath)) {
-                        byte[] buffer = new byte[1024];
-                        int len;
-                        while ((len = ti.read(buffer)) != -1) {
-                            out.write(buffer, 0, len);
-                        }
-                    }
-                }
-            }
-        }
-    }
-
-    private void inheritIO(InputStream src, String level) {
-        new Thread(() -> {
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(src))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                }
-            } catch (IOException e) {
-            }
-        }).start();
-    }
 }
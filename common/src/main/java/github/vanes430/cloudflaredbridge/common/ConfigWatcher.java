@@ -0,0 +1,106 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Watches a single file through a WatchService on its directory and runs the reload action on the
+// scheduler once writes have settled. Editors often save in several steps (truncate, write, rename),
+// so events are debounced and a save that leaves the content unchanged is ignored.
+public class ConfigWatcher implements Closeable {
+
+    private static final long DEBOUNCE_MILLIS = 500;
+
+    private final Path file;
+    private final ScheduledExecutorService executor;
+    private final Runnable onChange;
+    private final BridgeLogger logger;
+    private final WatchService watchService;
+    private final Thread thread;
+    private ScheduledFuture<?> pending;
+    private byte[] lastContent;
+
+    public ConfigWatcher(Path file, ScheduledExecutorService executor, Runnable onChange, BridgeLogger logger) throws IOException {
+        this.file = file;
+        this.executor = executor;
+        this.onChange = onChange;
+        this.logger = logger;
+        this.lastContent = readQuietly();
+        this.watchService = file.getFileSystem().newWatchService();
+        file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = BridgeUtils.daemonThreadFactory("CloudflaredBridge-ConfigWatcher").newThread(this::watch);
+        this.thread.start();
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean touched = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (file.getFileName().equals(event.context()) || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        touched = true;
+                    }
+                }
+                key.reset();
+                if (touched) {
+                    schedule();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    private synchronized void schedule() {
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        pending = executor.schedule(this::fire, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void fire() {
+        byte[] content = readQuietly();
+        synchronized (this) {
+            if (content == null || Arrays.equals(content, lastContent)) {
+                return;
+            }
+            lastContent = content;
+        }
+        logger.info("config.yml changed on disk. Reloading...");
+        try {
+            onChange.run();
+        } catch (RuntimeException e) {
+            logger.severe("Config reload failed: " + e.getMessage());
+        }
+    }
+
+    private byte[] readQuietly() {
+        try {
+            return Files.readAllBytes(file);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        thread.interrupt();
+        synchronized (this) {
+            if (pending != null) {
+                pending.cancel(false); // A save just before closing must not reload anymore
+            }
+        }
+    }
+}
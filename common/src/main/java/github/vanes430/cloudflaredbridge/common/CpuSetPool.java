@@ -0,0 +1,105 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+// Splits the CPUs this JVM may run on into fixed-size slices and leases one slice per pinned replica
+// (applied with taskset -c on Linux). The least-used slice is handed out first, so replicas stay on
+// distinct CPUs until there are more replicas than slices.
+public class CpuSetPool {
+
+    private final List<Integer> cpus;
+    private final int cpusPerSlice;
+    private final int[] leases;
+
+    public CpuSetPool(int cpusPerSlice) {
+        this.cpus = allowedCpus();
+        this.cpusPerSlice = Math.min(Math.max(1, cpusPerSlice), cpus.size());
+        this.leases = new int[Math.max(1, cpus.size() / this.cpusPerSlice)];
+    }
+
+    public static boolean isSupported() {
+        if (PlatformUtils.getOS() != PlatformUtils.OS.LINUX) {
+            return false;
+        }
+        String path = System.getenv("PATH");
+        for (String dir : (path != null ? path : "/usr/bin:/bin").split(File.pathSeparator)) {
+            if (Files.isExecutable(Paths.get(dir, "taskset"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized int acquire() {
+        int best = 0;
+        for (int i = 1; i < leases.length; i++) {
+            if (leases[i] < leases[best]) {
+                best = i;
+            }
+        }
+        leases[best]++;
+        return best;
+    }
+
+    // Leases the slice with the given CPU list, for a process that was pinned before; -1 if the layout changed
+    public synchronized int reserve(String cpuList) {
+        for (int slice = 0; slice < leases.length; slice++) {
+            if (cpuList(slice).equals(cpuList)) {
+                leases[slice]++;
+                return slice;
+            }
+        }
+        return -1;
+    }
+
+    public synchronized void release(int slice) {
+        if (slice >= 0 && slice < leases.length && leases[slice] > 0) {
+            leases[slice]--;
+        }
+    }
+
+    // taskset -c list for a slice, e.g. "4,5"
+    public String cpuList(int slice) {
+        StringBuilder list = new StringBuilder();
+        for (int i = slice * cpusPerSlice; i < (slice + 1) * cpusPerSlice; i++) {
+            if (list.length() > 0) {
+                list.append(',');
+            }
+            list.append(cpus.get(i));
+        }
+        return list.toString();
+    }
+
+    // Cpus_allowed_list from /proc (e.g. "0-3,8-11") honours an affinity the server was started with
+    private static List<Integer> allowedCpus() {
+        List<Integer> result = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("Cpus_allowed_list:")) {
+                    for (String range : line.substring(line.indexOf(':') + 1).trim().split(",")) {
+                        String[] bounds = range.split("-");
+                        int from = Integer.parseInt(bounds[0].trim());
+                        int to = bounds.length > 1 ? Integer.parseInt(bounds[1].trim()) : from;
+                        for (int cpu = from; cpu <= to; cpu++) {
+                            result.add(cpu);
+                        }
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException ignored) {
+            result.clear();
+        }
+        if (result.isEmpty()) {
+            for (int cpu = 0; cpu < Runtime.getRuntime().availableProcessors(); cpu++) {
+                result.add(cpu);
+            }
+        }
+        return result;
+    }
+}
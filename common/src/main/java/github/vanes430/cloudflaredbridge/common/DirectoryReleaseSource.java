@@ -0,0 +1,42 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+// Shared or pre-seeded directory holding version.txt, sha256sum.txt and the assets themselves.
+// Resolving and installing from it needs no network access at all.
+public class DirectoryReleaseSource implements ReleaseSource {
+
+    private final Path dir;
+
+    public DirectoryReleaseSource(Path dir) {
+        this.dir = dir;
+    }
+
+    @Override
+    public String getName() {
+        return "directory(" + dir + ")";
+    }
+
+    @Override
+    public ReleaseInfo resolve(String assetName) throws IOException {
+        Path sums = dir.resolve("sha256sum.txt");
+        Path asset = dir.resolve(assetName);
+        if (!Files.exists(sums) || !Files.exists(asset)) {
+            return null;
+        }
+        String hash = BridgeUtils.parseSha256Sums(Files.readString(sums, StandardCharsets.UTF_8)).get(assetName);
+        if (hash == null) {
+            return null;
+        }
+        Path versionFile = dir.resolve("version.txt");
+        String version = Files.exists(versionFile) ? Files.readString(versionFile, StandardCharsets.UTF_8).trim() : "";
+        if (version.isEmpty()) {
+            version = ReleaseInfo.versionFromHash(hash);
+        }
+        return new ReleaseInfo(version, assetName, null, asset, hash, getName());
+    }
+}
@@ -0,0 +1,58 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Latest release from the GitHub API. Metadata is served from the on-disk cache while it is fresh,
+// revalidated with If-None-Match once stale, and the cached copy is used when GitHub is unreachable.
+public class GitHubReleaseSource implements ReleaseSource {
+
+    public static final String DEFAULT_API_URL = "https://api.github.com/repos/cloudflare/cloudflared/releases/latest";
+
+    private final String apiUrl;
+    private final ReleaseCache cache;
+    private final long ttlMillis;
+    private final BridgeLogger logger;
+
+    public GitHubReleaseSource(String apiUrl, ReleaseCache cache, long ttlMillis, BridgeLogger logger) {
+        this.apiUrl = apiUrl;
+        this.cache = cache;
+        this.ttlMillis = ttlMillis;
+        this.logger = logger;
+    }
+
+    @Override
+    public String getName() {
+        return "github";
+    }
+
+    @Override
+    public ReleaseInfo resolve(String assetName) throws IOException {
+        ReleaseInfo cached = cache.get(assetName);
+        if (cached != null && cache.isFresh(ttlMillis)) {
+            logger.info("Using cached release metadata (" + cached.getVersion() + ", refreshed within "
+                    + TimeUnit.MILLISECONDS.toMinutes(ttlMillis) + "m).");
+            return cached;
+        }
+
+        try (BridgeUtils.HttpResult result = BridgeUtils.fetchConditional(apiUrl, cached != null ? cache.getEtag() : null)) {
+            if (result.getBody() == null && cached != null) {
+                cache.touch();
+                logger.info("Release metadata not modified (" + cached.getVersion() + ").");
+                return cached;
+            }
+
+            ReleaseMetadata metadata = ReleaseMetadata.parse(new InputStreamReader(result.getBody(), StandardCharsets.UTF_8));
+            cache.store(metadata, result.getEtag());
+            return metadata.getRelease(assetName);
+        } catch (IOException | RuntimeException e) {
+            if (cached == null) {
+                throw e instanceof IOException ? (IOException) e : new IOException("Invalid release metadata: " + e.getMessage(), e);
+            }
+            logger.warning("Could not refresh release metadata (" + e.getMessage() + "). Using cached copy (" + cached.getVersion() + ").");
+            return cached;
+        }
+    }
+}
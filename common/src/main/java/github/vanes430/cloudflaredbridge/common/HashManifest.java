@@ -0,0 +1,89 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+// Remembers the SHA-256 of a verified file together with its size, mtime and file key (inode),
+// so the file only has to be hashed again once one of those changes. For files extracted from an
+// archive the hash of the release asset they came from is recorded as well.
+public class HashManifest {
+
+    private final Path file;
+    private final Path manifestFile;
+
+    public HashManifest(Path file) {
+        this.file = file;
+        this.manifestFile = file.resolveSibling(file.getFileName() + ".manifest");
+    }
+
+    // Returns the recorded hash if the file is unchanged since it was recorded, otherwise null
+    public String getVerifiedHash() {
+        Properties recorded = loadIfUnchanged();
+        return recorded != null ? recorded.getProperty("sha256") : null;
+    }
+
+    // Returns the hash of the release asset the file was installed from, if unchanged since then
+    public String getVerifiedAssetHash() {
+        Properties recorded = loadIfUnchanged();
+        return recorded != null ? recorded.getProperty("asset-sha256", recorded.getProperty("sha256")) : null;
+    }
+
+    public void record(String sha256) throws IOException {
+        record(sha256, null);
+    }
+
+    public void record(String sha256, String assetSha256) throws IOException {
+        Properties props = identity(file);
+        props.setProperty("sha256", sha256);
+        if (assetSha256 != null) {
+            props.setProperty("asset-sha256", assetSha256);
+        }
+        Path tmp = manifestFile.resolveSibling(manifestFile.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            props.store(out, "CloudflaredBridge verified hash");
+        }
+        Files.move(tmp, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Properties loadIfUnchanged() {
+        if (!Files.exists(file) || !Files.exists(manifestFile)) {
+            return null;
+        }
+        try (InputStream in = Files.newInputStream(manifestFile)) {
+            Properties recorded = new Properties();
+            recorded.load(in);
+            Properties current = identity(file);
+            for (String key : current.stringPropertyNames()) {
+                if (!Objects.equals(current.getProperty(key), recorded.getProperty(key))) {
+                    return null;
+                }
+            }
+            return recorded;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public void invalidate() throws IOException {
+        Files.deleteIfExists(manifestFile);
+    }
+
+    private static Properties identity(Path file) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        Properties props = new Properties();
+        props.setProperty("size", String.valueOf(attrs.size()));
+        props.setProperty("mtime", String.valueOf(attrs.lastModifiedTime().to(TimeUnit.MICROSECONDS)));
+        if (attrs.fileKey() != null) {
+            props.setProperty("file-key", attrs.fileKey().toString()); // null on Windows
+        }
+        return props;
+    }
+}
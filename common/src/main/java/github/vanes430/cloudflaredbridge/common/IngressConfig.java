@@ -0,0 +1,185 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// The ingress section of config.yml: one locally managed tunnel serving many hostnames from a single
+// cloudflared process. The plugin writes cloudflared's own config.yml (ingress rules plus a catch-all) and,
+// when a token is given instead of a credentials file, the credentials JSON it encodes.
+public final class IngressConfig {
+
+    private final String tunnelId;
+    private final String credentialsFile;
+    private final JsonObject credentials;
+    private final List<Map<String, Object>> rules;
+    private final String fallback;
+    private final int replicas;
+    private final String profile;
+    private final int skippedRules;
+    private final String problem;
+
+    private IngressConfig(String tunnelId, String credentialsFile, JsonObject credentials, List<Map<String, Object>> rules,
+                          String fallback, int replicas, String profile, int skippedRules, String problem) {
+        this.tunnelId = tunnelId;
+        this.credentialsFile = credentialsFile;
+        this.credentials = credentials;
+        this.rules = Collections.unmodifiableList(rules);
+        this.fallback = fallback;
+        this.replicas = replicas;
+        this.profile = profile;
+        this.skippedRules = skippedRules;
+        this.problem = problem;
+    }
+
+    // Null when the section is missing or disabled; otherwise check getProblem() before using it
+    static IngressConfig parse(Map<String, Object> data, int defaultReplicas) {
+        if (!BridgeConfig.getBoolean(data, "enabled", false)) {
+            return null;
+        }
+        List<Map<String, Object>> rules = new ArrayList<>();
+        int skipped = 0;
+        Object ruleList = data.get("rules");
+        if (ruleList instanceof List) {
+            for (Object entry : (List<?>) ruleList) {
+                Map<String, Object> spec = entry instanceof Map ? BridgeConfig.toStringKeyMap((Map<?, ?>) entry) : Collections.emptyMap();
+                String hostname = text(spec.get("hostname"));
+                String service = text(spec.get("service"));
+                if (hostname == null || service == null) {
+                    skipped++; // A rule without a hostname would swallow every rule after it
+                    continue;
+                }
+                Map<String, Object> rule = new LinkedHashMap<>();
+                rule.put("hostname", hostname);
+                String path = text(spec.get("path"));
+                if (path != null) {
+                    rule.put("path", path);
+                }
+                rule.put("service", service);
+                if (spec.get("origin-request") instanceof Map) {
+                    rule.put("originRequest", BridgeConfig.toStringKeyMap((Map<?, ?>) spec.get("origin-request")));
+                }
+                rules.add(rule);
+            }
+        }
+        String fallback = text(data.get("fallback"));
+        int replicas = Math.max(1, BridgeConfig.getInt(data, "replicas", defaultReplicas));
+        String profile = text(data.get("profile"));
+
+        String tunnelId = text(data.get("tunnel"));
+        String credentialsFile = text(data.get("credentials-file"));
+        JsonObject credentials = null;
+        String token = text(data.get("token"));
+        if (credentialsFile == null && token != null) {
+            // A tunnel token is base64 JSON of the account tag (a), tunnel ID (t) and secret (s)
+            try {
+                JsonObject decoded = JsonParser.parseString(new String(Base64.getMimeDecoder().decode(token), StandardCharsets.UTF_8)).getAsJsonObject();
+                credentials = new JsonObject();
+                credentials.addProperty("AccountTag", decoded.get("a").getAsString());
+                credentials.addProperty("TunnelSecret", decoded.get("s").getAsString());
+                credentials.addProperty("TunnelID", decoded.get("t").getAsString());
+                if (tunnelId == null) {
+                    tunnelId = decoded.get("t").getAsString();
+                }
+            } catch (RuntimeException e) {
+                return new IngressConfig(tunnelId, null, null, rules, fallback, replicas, profile, skipped, "ingress.token is not a tunnel token");
+            }
+        }
+        String problem = null;
+        if (credentialsFile == null && credentials == null) {
+            problem = "set ingress.credentials-file or ingress.token";
+        } else if (tunnelId == null) {
+            problem = "ingress.tunnel (the tunnel's UUID) is required with a credentials file";
+        } else if (rules.isEmpty()) {
+            problem = "ingress.rules has no rule with both hostname and service";
+        }
+        return new IngressConfig(tunnelId, credentialsFile, credentials, rules, fallback, replicas, profile, skipped, problem);
+    }
+
+    private static String text(Object value) {
+        String text = value != null ? value.toString().trim() : "";
+        return text.isEmpty() ? null : text;
+    }
+
+    // Why the section cannot be used, or null
+    public String getProblem() {
+        return problem;
+    }
+
+    public String getTunnelId() {
+        return tunnelId;
+    }
+
+    public int getRuleCount() {
+        return rules.size();
+    }
+
+    // Rules left out because they lack a hostname or service
+    public int getSkippedRules() {
+        return skippedRules;
+    }
+
+    // Runs like a tokenlist entry whose "token" is the tunnel ID; the launch passes the generated config instead
+    TokenEntry toTokenEntry() {
+        return new TokenEntry(tunnelId, replicas, profile);
+    }
+
+    // Writes config.yml (and credentials.json when built from a token) into dir. Files are only replaced when
+    // their content differs; returns true if either changed, i.e. running processes serve old rules.
+    public boolean write(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        boolean changed = false;
+        Path credentialsPath;
+        if (credentials != null) {
+            credentialsPath = dir.resolve("credentials.json");
+            changed = writeIfChanged(credentialsPath, credentials.toString(), true);
+        } else {
+            credentialsPath = Paths.get(credentialsFile.startsWith("~")
+                    ? System.getProperty("user.home") + credentialsFile.substring(1) : credentialsFile);
+        }
+
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("tunnel", tunnelId);
+        config.put("credentials-file", credentialsPath.toAbsolutePath().toString());
+        List<Map<String, Object>> ingress = new ArrayList<>(rules);
+        ingress.add(Collections.singletonMap("service", fallback != null ? fallback : "http_status:404"));
+        config.put("ingress", ingress);
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        return writeIfChanged(getConfigPath(dir), "# Generated by CloudflaredBridge from the ingress section of its config.yml; edits are overwritten.\n"
+                + new Yaml(options).dump(config), false) | changed;
+    }
+
+    public static Path getConfigPath(Path dir) {
+        return dir.resolve("config.yml");
+    }
+
+    private static boolean writeIfChanged(Path file, String content, boolean secret) throws IOException {
+        if (Files.exists(file) && Files.readString(file, StandardCharsets.UTF_8).equals(content)) {
+            return false;
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.deleteIfExists(tmp);
+        if (secret && PlatformUtils.getOS() != PlatformUtils.OS.WINDOWS) {
+            Files.createFile(tmp, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+        Files.writeString(tmp, content, StandardCharsets.UTF_8);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+}
@@ -0,0 +1,150 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+// Named set of cloudflared launch options from the profiles section of config.yml: tunnel flags
+// (protocol, HA connections, edge IP version, retries, grace period) and extra environment variables
+// such as GOMAXPROCS/GOMEMLIMIT that bound the Go runtime next to the game server.
+public final class LaunchProfile {
+
+    public static final String DEFAULT = "default";
+
+    private final String name;
+    private final String protocol;
+    private final Integer haConnections;
+    private final String edgeIpVersion;
+    private final Integer retries;
+    private final String gracePeriod;
+    private final Map<String, String> environment;
+
+    private LaunchProfile(String name, String protocol, Integer haConnections, String edgeIpVersion, Integer retries,
+                          String gracePeriod, Map<String, String> environment) {
+        this.name = name;
+        this.protocol = protocol;
+        this.haConnections = haConnections;
+        this.edgeIpVersion = edgeIpVersion;
+        this.retries = retries;
+        this.gracePeriod = gracePeriod;
+        this.environment = Collections.unmodifiableMap(environment);
+    }
+
+    // cloudflared's own defaults: no extra flags or environment
+    static LaunchProfile empty(String name) {
+        return new LaunchProfile(name, null, null, null, null, null, Collections.emptyMap());
+    }
+
+    // Unknown protocol or IP version values are dropped so cloudflared's default applies
+    static LaunchProfile parse(String name, Map<String, Object> data) {
+        String protocol = lower(data.get("protocol"));
+        if (protocol != null && !protocol.equals("quic") && !protocol.equals("http2") && !protocol.equals("auto")) {
+            protocol = null;
+        }
+        String edgeIpVersion = lower(data.get("edge-ip-version"));
+        if (edgeIpVersion != null && !edgeIpVersion.equals("4") && !edgeIpVersion.equals("6") && !edgeIpVersion.equals("auto")) {
+            edgeIpVersion = null;
+        }
+        Integer haConnections = data.containsKey("ha-connections") ? Math.max(1, BridgeConfig.getInt(data, "ha-connections", 4)) : null;
+        Integer retries = data.containsKey("retries") ? Math.max(0, BridgeConfig.getInt(data, "retries", 5)) : null;
+        Object grace = data.get("grace-period");
+        String gracePeriod = grace instanceof Number ? grace + "s" : grace != null ? grace.toString().trim() : null;
+
+        Map<String, String> environment = new LinkedHashMap<>();
+        Object env = data.get("env");
+        if (env instanceof Map) {
+            for (Map.Entry<String, Object> entry : BridgeConfig.toStringKeyMap((Map<?, ?>) env).entrySet()) {
+                if (entry.getValue() != null) {
+                    environment.put(entry.getKey(), entry.getValue().toString());
+                }
+            }
+        }
+        return new LaunchProfile(name, protocol, haConnections, edgeIpVersion, retries, gracePeriod, environment);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Flags for `cloudflared tunnel` placed before the run subcommand
+    public List<String> getTunnelArguments() {
+        List<String> args = new ArrayList<>();
+        if (protocol != null) {
+            args.add("--protocol");
+            args.add(protocol);
+        }
+        if (haConnections != null) {
+            args.add("--ha-connections");
+            args.add(haConnections.toString());
+        }
+        if (edgeIpVersion != null) {
+            args.add("--edge-ip-version");
+            args.add(edgeIpVersion);
+        }
+        if (retries != null) {
+            args.add("--retries");
+            args.add(retries.toString());
+        }
+        if (gracePeriod != null) {
+            args.add("--grace-period");
+            args.add(gracePeriod);
+        }
+        return args;
+    }
+
+    public Map<String, String> getEnvironment() {
+        return environment;
+    }
+
+    // How long cloudflared waits for in-flight requests after SIGTERM (its default is 30s)
+    public long getGracePeriodSeconds() {
+        if (gracePeriod == null) {
+            return 30;
+        }
+        try {
+            String value = gracePeriod.toLowerCase(Locale.ROOT);
+            if (value.endsWith("ms")) {
+                return Math.max(1, Long.parseLong(value.substring(0, value.length() - 2)) / 1000);
+            }
+            if (value.endsWith("m")) {
+                return Long.parseLong(value.substring(0, value.length() - 1)) * 60;
+            }
+            if (value.endsWith("s")) {
+                return Long.parseLong(value.substring(0, value.length() - 1));
+            }
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 30;
+        }
+    }
+
+    // Same flags and environment, regardless of the name
+    public boolean sameLaunchAs(LaunchProfile other) {
+        return other != null && getTunnelArguments().equals(other.getTunnelArguments()) && environment.equals(other.environment);
+    }
+
+    private static String lower(Object value) {
+        return value != null ? value.toString().trim().toLowerCase(Locale.ROOT) : null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LaunchProfile)) {
+            return false;
+        }
+        LaunchProfile other = (LaunchProfile) o;
+        return name.equals(other.name) && sameLaunchAs(other);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, getTunnelArguments(), environment);
+    }
+}
@@ -0,0 +1,165 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+// Drains the output of every cloudflared process from one periodic task instead of a thread per stream.
+// Only bytes reported by available() are read, so a pass never blocks on a quiet process.
+public class LogPump implements Runnable {
+
+    private static final int MAX_LINE_LENGTH = 4096;
+    // Most read from one source per run; the fixed-delay schedule picks up the rest, so a process flooding
+    // its output never keeps the shared scheduler thread from its other tasks
+    private static final int MAX_BYTES_PER_RUN = 64 * 1024;
+
+    private final List<Source> sources = new CopyOnWriteArrayList<>();
+    private final ByteBuffer bytes = ByteBuffer.allocate(8192);
+    private final CharBuffer chars = CharBuffer.allocate(8192);
+
+    public void register(Process process, InputStream in, Consumer<String> sink) {
+        sources.add(new Source(process, in, sink));
+    }
+
+    public int getSourceCount() {
+        return sources.size();
+    }
+
+    @Override
+    public void run() {
+        for (Source source : sources) {
+            source.budget = MAX_BYTES_PER_RUN;
+        }
+        boolean progressed = true;
+        while (progressed) {
+            progressed = false;
+            for (Source source : sources) {
+                if (source.budget <= 0) {
+                    continue; // Out of budget, or registered during this run
+                }
+                try {
+                    int available = source.in.available();
+                    if (available > 0) {
+                        source.budget -= pump(source, available);
+                        progressed = true;
+                    } else if (!source.process.isAlive()) {
+                        drain(source);
+                        close(source);
+                    }
+                } catch (IOException e) {
+                    close(source);
+                }
+            }
+        }
+    }
+
+    // Returns the number of bytes read
+    private int pump(Source source, int available) throws IOException {
+        int read = fill(source, available);
+        if (read < 0) {
+            close(source);
+            return 0;
+        }
+        decode(source, false);
+        return read;
+    }
+
+    private void drain(Source source) throws IOException {
+        while (fill(source, bytes.capacity()) > 0) {
+            decode(source, false);
+        }
+        bytes.clear();
+        bytes.put(source.carry, 0, source.carryLength);
+        bytes.flip();
+        decode(source, true);
+    }
+
+    // Reads after any carried-over bytes and leaves the buffer flipped for decoding
+    private int fill(Source source, int max) throws IOException {
+        bytes.clear();
+        bytes.put(source.carry, 0, source.carryLength);
+        int read = source.in.read(bytes.array(), bytes.position(), Math.max(1, Math.min(max, bytes.remaining())));
+        if (read > 0) {
+            bytes.position(bytes.position() + read);
+        }
+        bytes.flip();
+        return read;
+    }
+
+    private void decode(Source source, boolean endOfInput) {
+        while (true) {
+            chars.clear();
+            boolean overflow = source.decoder.decode(bytes, chars, endOfInput).isOverflow();
+            chars.flip();
+            split(source);
+            if (!overflow) {
+                break;
+            }
+        }
+        // Keep an incomplete multi-byte sequence for the next read
+        source.carryLength = bytes.remaining();
+        bytes.get(source.carry, 0, source.carryLength);
+    }
+
+    private void split(Source source) {
+        while (chars.hasRemaining()) {
+            char c = chars.get();
+            if (c == '\n') {
+                emit(source);
+            } else if (c != '\r') {
+                source.line.append(c);
+                if (source.line.length() >= MAX_LINE_LENGTH) {
+                    emit(source);
+                }
+            }
+        }
+    }
+
+    private void emit(Source source) {
+        String line = source.line.toString();
+        source.line.setLength(0);
+        try {
+            source.sink.accept(line);
+        } catch (RuntimeException ignored) {
+            // A faulty sink must not stop the pump for every other tunnel
+        }
+    }
+
+    private void close(Source source) {
+        if (sources.remove(source)) {
+            if (source.line.length() > 0) {
+                emit(source);
+            }
+            try {
+                source.in.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static final class Source {
+        private final Process process;
+        private final InputStream in;
+        private final Consumer<String> sink;
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final StringBuilder line = new StringBuilder();
+        private final byte[] carry = new byte[8];
+        private int carryLength;
+        private int budget;
+
+        private Source(Process process, InputStream in, Consumer<String> sink) {
+            this.process = process;
+            this.in = in;
+            this.sink = sink;
+        }
+    }
+}
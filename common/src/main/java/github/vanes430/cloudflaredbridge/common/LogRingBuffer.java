@@ -0,0 +1,46 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Keeps the last N lines written to it; memory use is fixed by the capacity.
+public class LogRingBuffer {
+
+    private final String[] lines;
+    private int next;
+    private int size;
+
+    public LogRingBuffer(int capacity) {
+        this.lines = new String[Math.max(1, capacity)];
+    }
+
+    public synchronized void add(String line) {
+        lines[next] = line;
+        next = (next + 1) % lines.length;
+        if (size < lines.length) {
+            size++;
+        }
+    }
+
+    // Returns up to the last n lines, oldest first
+    public synchronized List<String> tail(int n) {
+        int count = Math.min(Math.max(0, n), size);
+        List<String> result = new ArrayList<>(count);
+        int start = next - count;
+        if (start < 0) {
+            start += lines.length;
+        }
+        for (int i = 0; i < count; i++) {
+            result.add(lines[(start + i) % lines.length]);
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return lines.length;
+    }
+}
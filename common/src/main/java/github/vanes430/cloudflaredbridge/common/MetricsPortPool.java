@@ -0,0 +1,57 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.BitSet;
+
+// Hands out localhost ports from a fixed range for cloudflared's --metrics listener.
+// A port is only handed out if nothing else is bound to it at that moment.
+public class MetricsPortPool {
+
+    private final int firstPort;
+    private final int size;
+    private final BitSet leased;
+
+    public MetricsPortPool(int firstPort, int lastPort) {
+        this.firstPort = firstPort;
+        this.size = Math.max(1, lastPort - firstPort + 1);
+        this.leased = new BitSet(size);
+    }
+
+    // Returns a free port, or -1 if the whole range is taken
+    public synchronized int acquire() {
+        for (int i = leased.nextClearBit(0); i < size; i = leased.nextClearBit(i + 1)) {
+            int port = firstPort + i;
+            if (isBindable(port)) {
+                leased.set(i);
+                return port;
+            }
+        }
+        return -1;
+    }
+
+    // Marks a port that is already in use by one of our processes (an adopted one) as leased
+    public synchronized void reserve(int port) {
+        int i = port - firstPort;
+        if (i >= 0 && i < size) {
+            leased.set(i);
+        }
+    }
+
+    public synchronized void release(int port) {
+        int i = port - firstPort;
+        if (i >= 0 && i < size) {
+            leased.clear(i);
+        }
+    }
+
+    private static boolean isBindable(int port) {
+        try {
+            new ServerSocket(port, 1, InetAddress.getLoopbackAddress()).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Periodically scrapes each running tunnel's --metrics endpoint. Requests are asynchronous and the body
+// is parsed line by line as it arrives, so the scheduler thread never waits on a slow process; a tunnel
+// whose previous scrape is still in flight is skipped.
+public class MetricsScraper implements Runnable {
+
+    private final HttpClient client;
+    private final Supplier<Iterable<Tunnel>> tunnels;
+    private final Supplier<BridgeConfig> config;
+    private long lastRunNanos;
+
+    public MetricsScraper(Executor executor, Supplier<Iterable<Tunnel>> tunnels, Supplier<BridgeConfig> config) {
+        this.client = HttpClient.newBuilder()
+                .executor(executor)
+                .connectTimeout(Duration.ofSeconds(2))
+                .build();
+        this.tunnels = tunnels;
+        this.config = config;
+    }
+
+    // Called every second; scrapes once the configured interval has passed
+    @Override
+    public void run() {
+        BridgeConfig config = this.config.get();
+        long now = System.nanoTime();
+        if (!config.isMetricsEnabled() || now - lastRunNanos < TimeUnit.SECONDS.toNanos(config.getMetricsScrapeIntervalSeconds())) {
+            return;
+        }
+        lastRunNanos = now;
+        for (Tunnel tunnel : tunnels.get()) {
+            if (tunnel.isAlive()) {
+                scrape(tunnel.getMetrics(), "127.0.0.1", tunnel.getMetrics().getPort());
+            }
+        }
+    }
+
+    public void scrape(TunnelMetrics metrics, String host, int port) {
+        if (port <= 0 || !metrics.tryBeginScrape()) {
+            return;
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://" + host + ":" + port + "/metrics"))
+                .timeout(Duration.ofSeconds(5))
+                .GET()
+                .build();
+        PrometheusTextParser parser = new PrometheusTextParser();
+        client.sendAsync(request, HttpResponse.BodyHandlers.fromLineSubscriber(parser)).whenComplete((response, error) -> {
+            try {
+                if (error == null && response.statusCode() == 200 && port == metrics.getPort()) {
+                    metrics.update(parser, System.nanoTime());
+                }
+            } finally {
+                metrics.endScrape();
+            }
+        });
+    }
+}
@@ -0,0 +1,39 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.io.IOException;
+import java.util.Map;
+
+// Internal HTTP mirror laid out like a directory source:
+// <url>/version.txt, <url>/sha256sum.txt ("<hash>  <asset>" lines) and <url>/<asset>.
+public class MirrorReleaseSource implements ReleaseSource {
+
+    private final String baseUrl;
+
+    public MirrorReleaseSource(String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    @Override
+    public String getName() {
+        return "mirror(" + baseUrl + ")";
+    }
+
+    @Override
+    public ReleaseInfo resolve(String assetName) throws IOException {
+        Map<String, String> hashes = BridgeUtils.parseSha256Sums(BridgeUtils.fetchUrl(baseUrl + "/sha256sum.txt"));
+        String hash = hashes.get(assetName);
+        if (hash == null) {
+            return null;
+        }
+        String version;
+        try {
+            version = BridgeUtils.fetchUrl(baseUrl + "/version.txt").trim();
+        } catch (IOException e) {
+            version = "";
+        }
+        if (version.isEmpty()) {
+            version = ReleaseInfo.versionFromHash(hash);
+        }
+        return new ReleaseInfo(version, assetName, baseUrl + "/" + assetName, null, hash, getName());
+    }
+}
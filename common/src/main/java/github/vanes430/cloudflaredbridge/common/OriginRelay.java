@@ -0,0 +1,431 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// TCP relay between cloudflared and the real origins, so traffic and origin latency can be measured per route.
+// One selector thread accepts, connects and forwards for every route through pooled direct buffers; a full
+// buffer stops reading from that side until the other side has taken the bytes, and half-closes are passed on.
+public class OriginRelay implements Closeable {
+
+    private static final int MAX_POOLED_BUFFERS = 64;
+    private static final long SELECT_TIMEOUT_MILLIS = 250;
+    private static final byte[] PROXY_V2_SIGNATURE = {0x0D, 0x0A, 0x0D, 0x0A, 0x00, 0x0D, 0x0A, 0x51, 0x55, 0x49, 0x54, 0x0A};
+
+    private final int bufferSize;
+    private final long connectTimeoutNanos;
+    private final BridgeLogger logger;
+    private final Map<RelayRoute, OriginStats> stats = new LinkedHashMap<>();
+    private final Map<RelayRoute, InetSocketAddress> addresses = new LinkedHashMap<>();
+    private final Selector selector;
+    private final Thread thread;
+    private volatile boolean closed;
+
+    // Relay thread only
+    private final ArrayDeque<ByteBuffer> pool = new ArrayDeque<>();
+    private final List<Connection> connecting = new ArrayList<>();
+
+    // Routes that cannot listen (port in use) or whose origin host does not resolve are logged and skipped
+    public OriginRelay(List<RelayRoute> routes, int bufferSize, long connectTimeoutMillis, BridgeLogger logger) throws IOException {
+        this.bufferSize = bufferSize;
+        this.connectTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(connectTimeoutMillis);
+        this.logger = logger;
+        this.selector = Selector.open();
+        for (RelayRoute route : routes) {
+            InetSocketAddress origin = new InetSocketAddress(route.getOriginHost(), route.getOriginPort());
+            if (origin.isUnresolved()) {
+                logger.severe("Relay route " + route.getName() + ": cannot resolve origin host " + route.getOriginHost() + ".");
+                continue;
+            }
+            ServerSocketChannel server = ServerSocketChannel.open();
+            try {
+                server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                server.bind(new InetSocketAddress(route.getListenHost(), route.getListenPort()));
+                server.configureBlocking(false);
+                OriginStats routeStats = new OriginStats();
+                server.register(selector, SelectionKey.OP_ACCEPT, new Listener(route, origin, routeStats));
+                stats.put(route, routeStats);
+                addresses.put(route, (InetSocketAddress) server.getLocalAddress());
+            } catch (IOException e) {
+                server.close();
+                logger.severe("Relay route " + route.getName() + " could not listen on " + route.getListenHost() + ":"
+                        + route.getListenPort() + ": " + e.getMessage());
+            }
+        }
+        this.thread = new Thread(this::run, "CloudflaredBridge-Relay");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    // Routes that are listening, in config order
+    public Map<RelayRoute, OriginStats> getStats() {
+        return Collections.unmodifiableMap(stats);
+    }
+
+    // Where a route is listening (resolves port 0 to the port actually bound), null if it is not
+    public InetSocketAddress getAddress(RelayRoute route) {
+        return addresses.get(route);
+    }
+
+    // Stops listening and drops every relayed connection
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(2));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                selector.select(SELECT_TIMEOUT_MILLIS);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.attachment() instanceof Listener) {
+                        accept((Listener) key.attachment(), (ServerSocketChannel) key.channel());
+                    } else {
+                        handle(key, (Connection) key.attachment());
+                    }
+                }
+                expireConnects();
+            }
+        } catch (IOException | RuntimeException e) {
+            if (!closed) {
+                logger.severe("Origin relay stopped: " + e.getMessage());
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    close((Connection) key.attachment());
+                } else {
+                    closeQuietly(key.channel());
+                }
+            }
+            closeQuietly(selector);
+        }
+    }
+
+    private void accept(Listener listener, ServerSocketChannel server) {
+        SocketChannel client;
+        while ((client = acceptQuietly(server)) != null) {
+            Connection connection = null;
+            try {
+                client.configureBlocking(false);
+                client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                SocketChannel origin = SocketChannel.open();
+                connection = new Connection(listener, client, origin);
+                origin.configureBlocking(false);
+                origin.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                connection.clientKey = client.register(selector, 0, connection);
+                if (origin.connect(listener.origin)) {
+                    connection.originKey = origin.register(selector, 0, connection);
+                    connected(connection);
+                } else {
+                    connection.originKey = origin.register(selector, SelectionKey.OP_CONNECT, connection);
+                    connecting.add(connection);
+                }
+            } catch (IOException e) {
+                if (connection != null) {
+                    connectFailed(connection, e.getMessage());
+                } else {
+                    closeQuietly(client);
+                }
+            }
+        }
+    }
+
+    private SocketChannel acceptQuietly(ServerSocketChannel server) {
+        try {
+            return server.accept();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void handle(SelectionKey key, Connection connection) {
+        try {
+            if (key.isValid() && key.isConnectable()) {
+                if (!connection.origin.finishConnect()) {
+                    return;
+                }
+                connecting.remove(connection);
+                connected(connection);
+                return;
+            }
+            if (key.isValid() && key.isReadable()) {
+                if (key == connection.clientKey) {
+                    readClient(connection);
+                } else {
+                    readOrigin(connection);
+                }
+            }
+            if (key.isValid() && key.isWritable()) {
+                flush(connection);
+            }
+            if (!connection.closed) {
+                updateInterest(connection);
+            }
+        } catch (IOException e) {
+            if (!connection.connected) {
+                connectFailed(connection, e.getMessage());
+            } else {
+                close(connection);
+            }
+        }
+    }
+
+    private void connected(Connection connection) throws IOException {
+        Listener listener = connection.listener;
+        connection.connected = true;
+        connection.connectedAt = System.nanoTime();
+        listener.stats.connected(connection.connectedAt - connection.startedAt);
+        if (listener.unreachable) {
+            listener.unreachable = false;
+            logger.info("Relay route " + listener.route.getName() + " reached its origin again.");
+        }
+        if (listener.route.getProxyProtocol() > 0) {
+            InetSocketAddress source = (InetSocketAddress) connection.client.getRemoteAddress();
+            InetSocketAddress destination = (InetSocketAddress) connection.client.getLocalAddress();
+            connection.up.put(listener.route.getProxyProtocol() == 1
+                    ? proxyHeaderV1(source, destination)
+                    : proxyHeaderV2(source, destination));
+            flush(connection);
+        }
+        updateInterest(connection);
+    }
+
+    private void connectFailed(Connection connection, String reason) {
+        Listener listener = connection.listener;
+        listener.stats.connectFailed();
+        if (!listener.unreachable) {
+            listener.unreachable = true;
+            logger.warning("Relay route " + listener.route.getName() + " cannot reach " + listener.route.getOriginHost() + ":"
+                    + listener.route.getOriginPort() + ": " + reason);
+        }
+        close(connection);
+    }
+
+    private void expireConnects() {
+        long now = System.nanoTime();
+        for (Connection connection : new ArrayList<>(connecting)) {
+            if (now - connection.startedAt >= connectTimeoutNanos) {
+                connectFailed(connection, "connect timed out");
+            }
+        }
+    }
+
+    private void readClient(Connection connection) throws IOException {
+        int read = connection.client.read(connection.up);
+        if (read < 0) {
+            connection.clientEof = true;
+        } else if (read > 0) {
+            connection.listener.stats.sentToOrigin(read);
+            if (connection.requestAt == 0) {
+                connection.requestAt = System.nanoTime();
+            }
+        }
+        flush(connection);
+    }
+
+    private void readOrigin(Connection connection) throws IOException {
+        int read = connection.origin.read(connection.down);
+        if (read < 0) {
+            connection.originEof = true;
+        } else if (read > 0) {
+            OriginStats routeStats = connection.listener.stats;
+            routeStats.receivedFromOrigin(read);
+            if (!connection.replied) {
+                connection.replied = true;
+                routeStats.firstByte(System.nanoTime() - (connection.requestAt != 0 ? connection.requestAt : connection.connectedAt));
+            }
+        }
+        flush(connection);
+    }
+
+    // Writes what each direction has buffered and passes an EOF on once its side is fully written
+    private void flush(Connection connection) throws IOException {
+        if (connection.up.position() > 0) {
+            write(connection.origin, connection.up);
+        }
+        if (connection.down.position() > 0) {
+            write(connection.client, connection.down);
+        }
+        if (connection.clientEof && connection.up.position() == 0 && !connection.originShut) {
+            connection.origin.shutdownOutput();
+            connection.originShut = true;
+        }
+        if (connection.originEof && connection.down.position() == 0 && !connection.clientShut) {
+            connection.client.shutdownOutput();
+            connection.clientShut = true;
+        }
+        if (connection.originShut && connection.clientShut) {
+            close(connection);
+        }
+    }
+
+    private static void write(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        try {
+            channel.write(buffer);
+        } finally {
+            buffer.compact();
+        }
+    }
+
+    // Read while there is room to buffer, write only while bytes are waiting
+    private void updateInterest(Connection connection) {
+        if (connection.closed || !connection.connected) {
+            return;
+        }
+        int clientOps = (!connection.clientEof && connection.up.hasRemaining() ? SelectionKey.OP_READ : 0)
+                | (connection.down.position() > 0 ? SelectionKey.OP_WRITE : 0);
+        int originOps = (!connection.originEof && connection.down.hasRemaining() ? SelectionKey.OP_READ : 0)
+                | (connection.up.position() > 0 ? SelectionKey.OP_WRITE : 0);
+        connection.clientKey.interestOps(clientOps);
+        connection.originKey.interestOps(originOps);
+    }
+
+    private void close(Connection connection) {
+        if (connection.closed) {
+            return;
+        }
+        connection.closed = true;
+        connecting.remove(connection);
+        closeQuietly(connection.client);
+        closeQuietly(connection.origin);
+        release(connection.up);
+        release(connection.down);
+        connection.listener.stats.connectionClosed();
+    }
+
+    private ByteBuffer acquire() {
+        ByteBuffer buffer = pool.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    private void release(ByteBuffer buffer) {
+        buffer.clear();
+        if (pool.size() < MAX_POOLED_BUFFERS) {
+            pool.push(buffer);
+        }
+    }
+
+    // "PROXY TCP4 <src> <dst> <src port> <dst port>\r\n"
+    static byte[] proxyHeaderV1(InetSocketAddress source, InetSocketAddress destination) {
+        boolean v4 = source.getAddress() instanceof Inet4Address && destination.getAddress() instanceof Inet4Address;
+        return ("PROXY " + (v4 ? "TCP4 " : "TCP6 ") + hostAddress(source.getAddress(), v4) + " "
+                + hostAddress(destination.getAddress(), v4) + " " + source.getPort() + " " + destination.getPort() + "\r\n")
+                .getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // Binary header: signature, version 2 PROXY command, TCP over IPv4 or IPv6, then addresses and ports
+    static byte[] proxyHeaderV2(InetSocketAddress source, InetSocketAddress destination) {
+        boolean v4 = source.getAddress() instanceof Inet4Address && destination.getAddress() instanceof Inet4Address;
+        int addressLength = v4 ? 12 : 36;
+        ByteBuffer header = ByteBuffer.allocate(16 + addressLength);
+        header.put(PROXY_V2_SIGNATURE);
+        header.put((byte) 0x21);
+        header.put((byte) (v4 ? 0x11 : 0x21));
+        header.putShort((short) addressLength);
+        header.put(addressBytes(source.getAddress(), v4));
+        header.put(addressBytes(destination.getAddress(), v4));
+        header.putShort((short) source.getPort());
+        header.putShort((short) destination.getPort());
+        return header.array();
+    }
+
+    private static String hostAddress(InetAddress address, boolean v4) {
+        if (v4) {
+            return address.getHostAddress();
+        }
+        String host = address instanceof Inet4Address ? "::ffff:" + address.getHostAddress() : address.getHostAddress();
+        int scope = host.indexOf('%');
+        return scope >= 0 ? host.substring(0, scope) : host;
+    }
+
+    // IPv4 addresses are written as IPv4-mapped IPv6 when the other side of the connection is IPv6
+    private static byte[] addressBytes(InetAddress address, boolean v4) {
+        byte[] bytes = address.getAddress();
+        if (v4 || bytes.length == 16) {
+            return bytes;
+        }
+        byte[] mapped = new byte[16];
+        mapped[10] = (byte) 0xFF;
+        mapped[11] = (byte) 0xFF;
+        System.arraycopy(bytes, 0, mapped, 12, 4);
+        return mapped;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static final class Listener {
+        final RelayRoute route;
+        final InetSocketAddress origin;
+        final OriginStats stats;
+        boolean unreachable;
+
+        Listener(RelayRoute route, InetSocketAddress origin, OriginStats stats) {
+            this.route = route;
+            this.origin = origin;
+            this.stats = stats;
+        }
+    }
+
+    // One relayed connection. `up` holds client bytes for the origin and `down` origin bytes for the client,
+    // both kept in fill mode between events.
+    private final class Connection {
+        final Listener listener;
+        final SocketChannel client;
+        final SocketChannel origin;
+        final ByteBuffer up = acquire();
+        final ByteBuffer down = acquire();
+        final long startedAt = System.nanoTime();
+        SelectionKey clientKey;
+        SelectionKey originKey;
+        boolean connected;
+        long connectedAt;
+        long requestAt;
+        boolean replied;
+        boolean clientEof;
+        boolean originEof;
+        boolean clientShut;
+        boolean originShut;
+        boolean closed;
+
+        Connection(Listener listener, SocketChannel client, SocketChannel origin) {
+            this.listener = listener;
+            this.client = client;
+            this.origin = origin;
+            listener.stats.connectionOpened();
+        }
+    }
+}
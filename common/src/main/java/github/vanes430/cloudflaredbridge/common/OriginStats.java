@@ -0,0 +1,111 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters for one relay route. The relay thread updates them with plain atomic adds and /cloudflared stats
+// reads them from any thread, so accounting never takes a lock on the forwarding path.
+public class OriginStats {
+
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder failedConnects = new LongAdder();
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder bytesToOrigin = new LongAdder();
+    private final LongAdder bytesFromOrigin = new LongAdder();
+    private final Latency connectLatency = new Latency();
+    private final Latency firstByteLatency = new Latency();
+
+    void connectionOpened() {
+        connections.increment();
+        active.incrementAndGet();
+    }
+
+    void connectionClosed() {
+        active.decrementAndGet();
+    }
+
+    void connectFailed() {
+        failedConnects.increment();
+    }
+
+    void connected(long nanos) {
+        connectLatency.record(nanos);
+    }
+
+    void firstByte(long nanos) {
+        firstByteLatency.record(nanos);
+    }
+
+    void sentToOrigin(int bytes) {
+        bytesToOrigin.add(bytes);
+    }
+
+    void receivedFromOrigin(int bytes) {
+        bytesFromOrigin.add(bytes);
+    }
+
+    public long getConnections() {
+        return connections.sum();
+    }
+
+    public long getFailedConnects() {
+        return failedConnects.sum();
+    }
+
+    public int getActiveConnections() {
+        return active.get();
+    }
+
+    public long getBytesToOrigin() {
+        return bytesToOrigin.sum();
+    }
+
+    public long getBytesFromOrigin() {
+        return bytesFromOrigin.sum();
+    }
+
+    // Time to establish the TCP connection to the origin
+    public double getConnectMillisAverage() {
+        return connectLatency.averageMillis();
+    }
+
+    public double getConnectMillisMax() {
+        return connectLatency.maxMillis();
+    }
+
+    // Time from the client's first bytes reaching the origin (or from the connect, if the origin speaks first)
+    // to the origin's first reply
+    public double getFirstByteMillisAverage() {
+        return firstByteLatency.averageMillis();
+    }
+
+    public double getFirstByteMillisMax() {
+        return firstByteLatency.maxMillis();
+    }
+
+    private static final class Latency {
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder count = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            totalNanos.add(nanos);
+            count.increment();
+            long max;
+            while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+                // Retry until this sample is stored or a larger one is
+            }
+        }
+
+        // -1 until the first sample
+        double averageMillis() {
+            long samples = count.sum();
+            return samples > 0 ? totalNanos.sum() / (double) samples / 1_000_000.0 : -1;
+        }
+
+        double maxMillis() {
+            return count.sum() > 0 ? maxNanos.get() / 1_000_000.0 : -1;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Samples CPU time and resident memory of every running cloudflared process. On Linux both come from
+// /proc/<pid>/stat and /proc/<pid>/status, read into one reused buffer without building strings; elsewhere
+// CPU time comes from ProcessHandle and memory is not available. A process over its configured limits for
+// several samples in a row is handed to the recycler.
+public class ProcessSampler implements Runnable {
+
+    // USER_HZ; fixed at 100 on every mainstream Linux architecture
+    private static final long CLOCK_TICKS_PER_SECOND = 100;
+    private static final byte[] VM_RSS = "VmRSS:".getBytes(StandardCharsets.US_ASCII);
+
+    private final Supplier<Iterable<Tunnel>> tunnels;
+    private final Supplier<BridgeConfig> config;
+    private final Consumer<Tunnel> recycler;
+    private final BridgeLogger logger;
+    private final boolean procfs = PlatformUtils.getOS() == PlatformUtils.OS.LINUX && Paths.get("/proc/self/stat").toFile().exists();
+    private final ByteBuffer buffer = ByteBuffer.allocate(4096);
+    private long lastRunNanos;
+
+    public ProcessSampler(Supplier<Iterable<Tunnel>> tunnels, Supplier<BridgeConfig> config, Consumer<Tunnel> recycler, BridgeLogger logger) {
+        this.tunnels = tunnels;
+        this.config = config;
+        this.recycler = recycler;
+        this.logger = logger;
+    }
+
+    // Called every second; samples once the configured interval has passed
+    @Override
+    public void run() {
+        BridgeConfig config = this.config.get();
+        long now = System.nanoTime();
+        if (!config.isResourceSamplingEnabled() || now - lastRunNanos < TimeUnit.SECONDS.toNanos(config.getResourceSampleIntervalSeconds())) {
+            return;
+        }
+        lastRunNanos = now;
+        for (Tunnel tunnel : tunnels.get()) {
+            Process process = tunnel.getProcess();
+            if (process == null || !process.isAlive()) {
+                continue;
+            }
+            try {
+                sample(tunnel, process, config);
+            } catch (RuntimeException e) {
+                logger.warning("Could not sample " + tunnel.getDisplayName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void sample(Tunnel tunnel, Process process, BridgeConfig config) {
+        long pid = process.pid();
+        long cpuNanos;
+        long rssBytes;
+        if (procfs) {
+            cpuNanos = readCpuNanos(pid);
+            rssBytes = readRssBytes(pid);
+        } else {
+            cpuNanos = process.toHandle().info().totalCpuDuration().map(Duration::toNanos).orElse(-1L);
+            rssBytes = -1;
+        }
+        ProcessUsage usage = tunnel.getUsage();
+        if (!usage.record(pid, cpuNanos, rssBytes, System.nanoTime(), config.getResourceHistorySize())) {
+            return;
+        }
+
+        long maxRss = (long) config.getMaxRssMb() << 20;
+        int maxCpu = config.getMaxCpuPercent();
+        boolean overRss = maxRss > 0 && rssBytes > maxRss;
+        boolean overCpu = maxCpu > 0 && usage.getCpuPercent() > maxCpu;
+        if (usage.recordBreach(overRss || overCpu) >= config.getBreachSamples()) {
+            usage.clearBreaches();
+            logger.warning(tunnel.getDisplayName() + " exceeded its resource limit for " + config.getBreachSamples() + " samples ("
+                    + (overRss ? String.format(Locale.ROOT, "rss=%.1fMB > %dMB", rssBytes / 1048576.0, config.getMaxRssMb()) : "")
+                    + (overRss && overCpu ? ", " : "")
+                    + (overCpu ? String.format(Locale.ROOT, "cpu=%.1f%% > %d%%", usage.getCpuPercent(), maxCpu) : "")
+                    + "). Recycling it.");
+            recycler.accept(tunnel);
+        }
+    }
+
+    // utime + stime (fields 14 and 15 of /proc/<pid>/stat), counted after the parenthesised command name
+    private long readCpuNanos(long pid) {
+        int length = read(Paths.get("/proc", Long.toString(pid), "stat"));
+        if (length < 0) {
+            return -1;
+        }
+        byte[] data = buffer.array();
+        int pos = length - 1;
+        while (pos >= 0 && data[pos] != ')') {
+            pos--;
+        }
+        // Field 2 ends at the ')'; skip to the start of field 14
+        int field = 2;
+        while (pos < length && field < 14) {
+            if (data[pos] == ' ') {
+                field++;
+            }
+            pos++;
+        }
+        long ticks = 0;
+        for (int i = 0; i < 2; i++) {
+            long value = 0;
+            while (pos < length && data[pos] >= '0' && data[pos] <= '9') {
+                value = value * 10 + (data[pos++] - '0');
+            }
+            ticks += value;
+            pos++;
+        }
+        return ticks * (TimeUnit.SECONDS.toNanos(1) / CLOCK_TICKS_PER_SECOND);
+    }
+
+    // VmRSS line of /proc/<pid>/status, in kB
+    private long readRssBytes(long pid) {
+        int length = read(Paths.get("/proc", Long.toString(pid), "status"));
+        byte[] data = buffer.array();
+        for (int pos = 0; pos + VM_RSS.length < length; pos++) {
+            if ((pos == 0 || data[pos - 1] == '\n') && startsWith(data, pos, VM_RSS)) {
+                pos += VM_RSS.length;
+                while (pos < length && (data[pos] < '0' || data[pos] > '9')) {
+                    pos++;
+                }
+                long kb = 0;
+                while (pos < length && data[pos] >= '0' && data[pos] <= '9') {
+                    kb = kb * 10 + (data[pos++] - '0');
+                }
+                return kb << 10;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(byte[] data, int pos, byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[pos + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Reads up to the buffer's capacity; VmRSS sits well within the first 4 KB of status
+    private int read(Path file) {
+        buffer.clear();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+                // keep reading
+            }
+            return buffer.position();
+        } catch (IOException e) {
+            return -1; // Process exited between the liveness check and the read
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+// Remembers which cloudflared processes are running (processes.state under the cloudflared root), so the next
+// start can find and adopt them after a plugin reload or a crash. Tokens are never written, only a hash of them.
+public class ProcessStateFile {
+
+    private final Path file;
+
+    public ProcessStateFile(Path file) {
+        this.file = file;
+    }
+
+    public static String fingerprint(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return BridgeUtils.toHex(digest.digest(token.getBytes(StandardCharsets.UTF_8))).substring(0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized List<Entry> load() {
+        List<Entry> entries = new ArrayList<>();
+        if (!Files.exists(file)) {
+            return entries;
+        }
+        Properties props = new Properties();
+        int count;
+        try (InputStream in = Files.newInputStream(file)) {
+            props.load(in);
+            count = Integer.parseInt(props.getProperty("count", "0").trim());
+        } catch (IOException | IllegalArgumentException e) {
+            return entries; // Unreadable or damaged: nothing to adopt, leftovers are found by the orphan scan
+        }
+        for (int i = 0; i < count; i++) {
+            String prefix = "process." + i + ".";
+            try {
+                entries.add(new Entry(
+                        Long.parseLong(props.getProperty(prefix + "pid")),
+                        Long.parseLong(props.getProperty(prefix + "started")),
+                        props.getProperty(prefix + "token"),
+                        Integer.parseInt(props.getProperty(prefix + "index")),
+                        Integer.parseInt(props.getProperty(prefix + "replica")),
+                        props.getProperty(prefix + "binary"),
+                        props.getProperty(prefix + "binary-sha256"),
+                        props.getProperty(prefix + "version"),
+                        Integer.parseInt(props.getProperty(prefix + "metrics-port", "-1")),
+                        props.getProperty(prefix + "cpus"),
+                        props.getProperty(prefix + "profile"),
+                        props.getProperty(prefix + "log")));
+            } catch (RuntimeException ignored) {
+                // Skip a damaged entry
+            }
+        }
+        return entries;
+    }
+
+    public synchronized void save(Collection<Entry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            Files.deleteIfExists(file);
+            return;
+        }
+        Properties props = new Properties();
+        int i = 0;
+        for (Entry entry : entries) {
+            String prefix = "process." + i++ + ".";
+            props.setProperty(prefix + "pid", String.valueOf(entry.pid));
+            props.setProperty(prefix + "started", String.valueOf(entry.startedMillis));
+            props.setProperty(prefix + "token", entry.tokenFingerprint);
+            props.setProperty(prefix + "index", String.valueOf(entry.index));
+            props.setProperty(prefix + "replica", String.valueOf(entry.replica));
+            props.setProperty(prefix + "binary", entry.binary);
+            setIfPresent(props, prefix + "binary-sha256", entry.binarySha256);
+            setIfPresent(props, prefix + "version", entry.version);
+            props.setProperty(prefix + "metrics-port", String.valueOf(entry.metricsPort));
+            setIfPresent(props, prefix + "cpus", entry.cpus);
+            setIfPresent(props, prefix + "profile", entry.profile);
+            setIfPresent(props, prefix + "log", entry.logFile);
+        }
+        props.setProperty("count", String.valueOf(i));
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            props.store(out, "CloudflaredBridge running processes");
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void setIfPresent(Properties props, String key, String value) {
+        if (value != null) {
+            props.setProperty(key, value);
+        }
+    }
+
+    public static final class Entry {
+        final long pid;
+        final long startedMillis;
+        final String tokenFingerprint;
+        final int index;
+        final int replica;
+        final String binary;
+        final String binarySha256;
+        final String version;
+        final int metricsPort;
+        final String cpus;
+        final String profile;
+        final String logFile;
+
+        Entry(long pid, long startedMillis, String tokenFingerprint, int index, int replica, String binary, String binarySha256,
+              String version, int metricsPort, String cpus, String profile, String logFile) {
+            this.pid = pid;
+            this.startedMillis = startedMillis;
+            this.tokenFingerprint = tokenFingerprint;
+            this.index = index;
+            this.replica = replica;
+            this.binary = binary;
+            this.binarySha256 = binarySha256;
+            this.version = version;
+            this.metricsPort = metricsPort;
+            this.cpus = cpus;
+            this.profile = profile;
+            this.logFile = logFile;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package github.vanes430.cloudflaredbridge.common;
+
+// CPU and resident memory of one tunnel's cloudflared process, sampled periodically into fixed-size
+// history arrays (oldest samples are overwritten). CPU% is relative to one core, like top.
+public class ProcessUsage {
+
+    private double[] cpuHistory = new double[0];
+    private long[] rssHistory = new long[0];
+    private int next;
+    private int count;
+    private long pid = -1;
+    private long lastCpuNanos = -1;
+    private long lastSampleNanos;
+    private int breaches;
+
+    private volatile double cpuPercent = -1;
+    private volatile long rssBytes = -1;
+    private volatile long peakRssBytes = -1;
+
+    // Adds a sample; returns false for the first sample of a process, which only sets the CPU baseline
+    synchronized boolean record(long pid, long cpuNanos, long rssBytes, long nowNanos, int historySize) {
+        if (pid != this.pid) {
+            reset(pid);
+        }
+        if (cpuHistory.length != historySize) {
+            cpuHistory = new double[historySize];
+            rssHistory = new long[historySize];
+            next = 0;
+            count = 0;
+        }
+        this.rssBytes = rssBytes;
+        if (rssBytes > peakRssBytes) {
+            peakRssBytes = rssBytes;
+        }
+        long previousCpu = lastCpuNanos;
+        long previousSample = lastSampleNanos;
+        lastCpuNanos = cpuNanos;
+        lastSampleNanos = nowNanos;
+        if (previousCpu < 0 || cpuNanos < 0 || nowNanos <= previousSample) {
+            return false;
+        }
+        cpuPercent = Math.max(0, cpuNanos - previousCpu) * 100.0 / (nowNanos - previousSample);
+        cpuHistory[next] = cpuPercent;
+        rssHistory[next] = rssBytes;
+        next = (next + 1) % historySize;
+        count = Math.min(count + 1, historySize);
+        return true;
+    }
+
+    private void reset(long pid) {
+        this.pid = pid;
+        lastCpuNanos = -1;
+        next = 0;
+        count = 0;
+        breaches = 0;
+        cpuPercent = -1;
+        rssBytes = -1;
+        peakRssBytes = -1;
+    }
+
+    // Counts consecutive samples over a limit; returns the current streak
+    synchronized int recordBreach(boolean over) {
+        breaches = over ? breaches + 1 : 0;
+        return breaches;
+    }
+
+    synchronized void clearBreaches() {
+        breaches = 0;
+    }
+
+    // True once at least one CPU interval has been measured
+    public boolean isAvailable() {
+        return cpuPercent >= 0;
+    }
+
+    public double getCpuPercent() {
+        return cpuPercent;
+    }
+
+    // Resident set size in bytes, or -1 where the platform does not expose it
+    public long getRssBytes() {
+        return rssBytes;
+    }
+
+    public long getPeakRssBytes() {
+        return peakRssBytes;
+    }
+
+    public synchronized int getSampleCount() {
+        return count;
+    }
+
+    public synchronized double getAverageCpuPercent() {
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += cpuHistory[i];
+        }
+        return count > 0 ? sum / count : 0;
+    }
+
+    // Memory samples, oldest first
+    public synchronized long[] getRssHistory() {
+        long[] result = new long[count];
+        if (count == 0) {
+            return result;
+        }
+        int start = (next - count + rssHistory.length) % rssHistory.length;
+        for (int i = 0; i < count; i++) {
+            result[i] = rssHistory[(start + i) % rssHistory.length];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,127 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.util.concurrent.Flow;
+
+// Parses cloudflared's Prometheus text exposition one line at a time as the response arrives,
+// keeping only the series we report as primitive sums. Unknown series are skipped without allocating.
+public class PrometheusTextParser implements Flow.Subscriber<String> {
+
+    double totalRequests;
+    double requestErrors;
+    double concurrentRequests;
+    double haConnections;
+    double serverErrors;
+    double bytesSent;
+    double bytesReceived;
+    double rttSumMillis;
+    int rttSamples;
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(String line) {
+        accept(line);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+    }
+
+    @Override
+    public void onComplete() {
+    }
+
+    // name{labels} value [timestamp]
+    public void accept(String line) {
+        if (line.isEmpty() || line.charAt(0) == '#') {
+            return;
+        }
+        int nameEnd = 0;
+        while (nameEnd < line.length() && line.charAt(nameEnd) != '{' && line.charAt(nameEnd) != ' ') {
+            nameEnd++;
+        }
+        Series series = Series.of(line, nameEnd);
+        if (series == null) {
+            return;
+        }
+
+        int valueStart = nameEnd;
+        if (valueStart < line.length() && line.charAt(valueStart) == '{') {
+            valueStart = line.indexOf('}', valueStart) + 1;
+            if (valueStart == 0) {
+                return;
+            }
+        }
+        while (valueStart < line.length() && line.charAt(valueStart) == ' ') {
+            valueStart++;
+        }
+        int valueEnd = line.indexOf(' ', valueStart);
+        double value;
+        try {
+            value = Double.parseDouble(valueEnd < 0 ? line.substring(valueStart) : line.substring(valueStart, valueEnd));
+        } catch (NumberFormatException e) {
+            return;
+        }
+
+        switch (series) {
+            case TOTAL_REQUESTS:
+                totalRequests += value;
+                break;
+            case REQUEST_ERRORS:
+                requestErrors += value;
+                break;
+            case CONCURRENT_REQUESTS:
+                concurrentRequests += value;
+                break;
+            case HA_CONNECTIONS:
+                haConnections += value;
+                break;
+            case RESPONSE_BY_CODE:
+                if (line.regionMatches(nameEnd, "{status_code=\"5", 0, 15)) {
+                    serverErrors += value;
+                }
+                break;
+            case SENT_BYTES:
+                bytesSent += value;
+                break;
+            case RECEIVED_BYTES:
+                bytesReceived += value;
+                break;
+            case SMOOTHED_RTT:
+                rttSumMillis += value;
+                rttSamples++;
+                break;
+        }
+    }
+
+    private enum Series {
+        TOTAL_REQUESTS("cloudflared_tunnel_total_requests"),
+        REQUEST_ERRORS("cloudflared_tunnel_request_errors"),
+        CONCURRENT_REQUESTS("cloudflared_tunnel_concurrent_requests_per_tunnel"),
+        HA_CONNECTIONS("cloudflared_tunnel_ha_connections"),
+        RESPONSE_BY_CODE("cloudflared_tunnel_response_by_code"),
+        SENT_BYTES("quic_client_sent_bytes"),
+        RECEIVED_BYTES("quic_client_receive_bytes"),
+        SMOOTHED_RTT("quic_client_smoothed_rtt");
+
+        private static final Series[] VALUES = values();
+
+        private final String metric;
+
+        Series(String metric) {
+            this.metric = metric;
+        }
+
+        static Series of(String line, int nameEnd) {
+            for (Series series : VALUES) {
+                if (series.metric.length() == nameEnd && line.startsWith(series.metric)) {
+                    return series;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Downloads a file as concurrent HTTP Range chunks into a preallocated file using positional writes.
+// Finished chunks are recorded in a <file>.progress sidecar so an interrupted download resumes where it
+// stopped. Servers without range support (see probe()) are fetched with downloadSingle() instead.
+public class RangeDownloader {
+
+    private final int connections;
+    private final long chunkSize;
+    private final int retries;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+
+    public RangeDownloader(int connections, long chunkSize, int retries, int connectTimeoutMillis, int readTimeoutMillis) {
+        this.connections = Math.max(1, connections);
+        this.chunkSize = Math.max(64 * 1024, chunkSize);
+        this.retries = Math.max(0, retries);
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    // Asks for the first byte to learn whether the server honours Range and how large the file is
+    public Probe probe(String url) throws IOException {
+        HttpURLConnection conn = open(url);
+        conn.setRequestProperty("Range", "bytes=0-0");
+        try {
+            int status = conn.getResponseCode();
+            String resolvedUrl = conn.getURL().toString(); // After redirects, so chunks skip them
+            String validator = conn.getHeaderField("ETag") != null ? conn.getHeaderField("ETag") : conn.getHeaderField("Last-Modified");
+            if (status == HttpURLConnection.HTTP_PARTIAL) {
+                long size = parseTotal(conn.getHeaderField("Content-Range"));
+                return new Probe(size > 0, size, resolvedUrl, validator);
+            }
+            if (status == HttpURLConnection.HTTP_OK) {
+                return new Probe(false, conn.getContentLengthLong(), resolvedUrl, validator);
+            }
+            throw new IOException("HTTP " + status + " from " + url);
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    public void download(Probe probe, Path target) throws IOException {
+        if (!probe.supportsRanges()) {
+            throw new IOException("Server does not support range requests");
+        }
+        long size = probe.getSize();
+        int chunkCount = (int) ((size + chunkSize - 1) / chunkSize);
+        Progress progress = Progress.load(target, probe, chunkSize, chunkCount);
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(connections, Math.max(1, chunkCount)),
+                BridgeUtils.daemonThreadFactory("CloudflaredBridge-Download"));
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() != size) {
+                channel.truncate(Math.min(channel.size(), size));
+                channel.write(ByteBuffer.allocate(1), size - 1); // Preallocate the full length
+            }
+
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < chunkCount; i++) {
+                if (progress.isDone(i)) {
+                    continue;
+                }
+                int chunk = i;
+                long from = chunk * chunkSize;
+                long to = Math.min(size, from + chunkSize) - 1;
+                futures.add(pool.submit(() -> {
+                    fetchChunkWithRetry(probe.getUrl(), channel, from, to);
+                    channel.force(false); // Only record chunks whose bytes are durable
+                    progress.markDone(chunk);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            channel.force(true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Download interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+        progress.delete();
+    }
+
+    // Single stream for servers that ignore Range. There is nothing to resume from, so every retry starts
+    // over; a body shorter than the probed size counts as a failed attempt rather than a finished file.
+    public void downloadSingle(Probe probe, Path target) throws IOException {
+        IOException last = null;
+        for (int attempt = 0; attempt <= retries; attempt++) {
+            if (attempt > 0) {
+                backoff(attempt - 1);
+            }
+            HttpURLConnection conn = open(probe.getUrl());
+            try (InputStream in = conn.getInputStream();
+                 OutputStream out = Files.newOutputStream(target)) {
+                long written = in.transferTo(out);
+                if (probe.getSize() > 0 && written != probe.getSize()) {
+                    throw new IOException("Download ended early at " + written + " of " + probe.getSize() + " bytes");
+                }
+                return;
+            } catch (IOException e) {
+                last = e;
+            } finally {
+                conn.disconnect();
+            }
+        }
+        throw new IOException("Download failed after " + (retries + 1) + " attempts: " + last.getMessage(), last);
+    }
+
+    private void fetchChunkWithRetry(String url, FileChannel channel, long from, long to) throws IOException {
+        IOException last = null;
+        for (int attempt = 0; attempt <= retries; attempt++) {
+            try {
+                fetchChunk(url, channel, from, to);
+                return;
+            } catch (IOException e) {
+                last = e;
+                backoff(attempt);
+            }
+        }
+        throw new IOException("Chunk " + from + "-" + to + " failed after " + (retries + 1) + " attempts: " + last.getMessage(), last);
+    }
+
+    private static void backoff(int attempt) throws IOException {
+        try {
+            Thread.sleep(Math.min(10_000L, 500L << attempt));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Download interrupted", e);
+        }
+    }
+
+    private void fetchChunk(String url, FileChannel channel, long from, long to) throws IOException {
+        HttpURLConnection conn = open(url);
+        conn.setRequestProperty("Range", "bytes=" + from + "-" + to);
+        try {
+            int status = conn.getResponseCode();
+            if (status != HttpURLConnection.HTTP_PARTIAL) {
+                throw new IOException("Expected HTTP 206 for range " + from + "-" + to + " but got " + status);
+            }
+            long position = from;
+            byte[] buffer = new byte[64 * 1024];
+            ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+            try (InputStream in = conn.getInputStream()) {
+                int read;
+                while (position <= to && (read = in.read(buffer, 0, (int) Math.min(buffer.length, to - position + 1))) != -1) {
+                    wrapped.clear().limit(read);
+                    while (wrapped.hasRemaining()) {
+                        position += channel.write(wrapped, position);
+                    }
+                }
+            }
+            if (position <= to) {
+                throw new IOException("Range " + from + "-" + to + " ended early at " + position);
+            }
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private HttpURLConnection open(String url) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setRequestProperty("User-Agent", "CloudflaredBridge");
+        conn.setConnectTimeout(connectTimeoutMillis);
+        conn.setReadTimeout(readTimeoutMillis);
+        return conn;
+    }
+
+    // Content-Range: bytes 0-0/12345
+    private static long parseTotal(String contentRange) {
+        if (contentRange == null) {
+            return -1;
+        }
+        int slash = contentRange.lastIndexOf('/');
+        if (slash < 0 || contentRange.endsWith("*")) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public static class Probe {
+        private final boolean supportsRanges;
+        private final long size;
+        private final String url;
+        private final String validator;
+
+        public Probe(boolean supportsRanges, long size, String url, String validator) {
+            this.supportsRanges = supportsRanges;
+            this.size = size;
+            this.url = url;
+            this.validator = validator;
+        }
+
+        public boolean supportsRanges() {
+            return supportsRanges;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        // ETag or Last-Modified; a change means earlier chunks belong to a different file
+        public String getValidator() {
+            return validator;
+        }
+    }
+
+    private static final class Progress {
+        private final Path file;
+        private final Properties props;
+        private final BitSet done;
+
+        private Progress(Path file, Properties props, BitSet done) {
+            this.file = file;
+            this.props = props;
+            this.done = done;
+        }
+
+        static Progress load(Path target, Probe probe, long chunkSize, int chunkCount) throws IOException {
+            Path file = target.resolveSibling(target.getFileName() + ".progress");
+            Properties expected = new Properties();
+            expected.setProperty("size", String.valueOf(probe.getSize()));
+            expected.setProperty("chunk-size", String.valueOf(chunkSize));
+            if (probe.getValidator() != null) {
+                expected.setProperty("validator", probe.getValidator());
+            }
+
+            BitSet done = new BitSet(chunkCount);
+            if (Files.exists(file) && Files.exists(target)) {
+                Properties stored = new Properties();
+                try (InputStream in = Files.newInputStream(file)) {
+                    stored.load(in);
+                }
+                boolean sameFile = true;
+                for (String key : expected.stringPropertyNames()) {
+                    sameFile &= Objects.equals(expected.getProperty(key), stored.getProperty(key));
+                }
+                if (sameFile && stored.getProperty("done") != null) {
+                    done = BitSet.valueOf(Base64.getDecoder().decode(stored.getProperty("done")));
+                }
+            } else {
+                Files.deleteIfExists(target); // No record of what a leftover file contains
+            }
+            return new Progress(file, expected, done);
+        }
+
+        synchronized boolean isDone(int chunk) {
+            return done.get(chunk);
+        }
+
+        synchronized void markDone(int chunk) throws IOException {
+            done.set(chunk);
+            props.setProperty("done", Base64.getEncoder().encodeToString(done.toByteArray()));
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                props.store(out, "CloudflaredBridge download progress");
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        void delete() throws IOException {
+            Files.deleteIfExists(file);
+        }
+    }
+}
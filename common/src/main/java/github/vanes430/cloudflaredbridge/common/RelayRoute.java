@@ -0,0 +1,129 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+// One entry of relay.routes in config.yml: a local port the tunnel's ingress points at, the origin it is
+// forwarded to, and whether a PROXY protocol header (v1 text or v2 binary) is sent ahead of the client's bytes.
+public final class RelayRoute {
+
+    private final String name;
+    private final String listenHost;
+    private final int listenPort;
+    private final String originHost;
+    private final int originPort;
+    private final int proxyProtocol;
+
+    public RelayRoute(String name, String listenHost, int listenPort, String originHost, int originPort, int proxyProtocol) {
+        if (proxyProtocol < 0 || proxyProtocol > 2) {
+            throw new IllegalArgumentException("proxyProtocol must be 0 (off), 1 or 2");
+        }
+        this.name = name;
+        this.listenHost = listenHost;
+        this.listenPort = listenPort;
+        this.originHost = originHost;
+        this.originPort = originPort;
+        this.proxyProtocol = proxyProtocol;
+    }
+
+    // listen and origin are "port" or "host:port" (the listen host defaults to 127.0.0.1, the origin host to
+    // localhost); returns null when either is missing or not a valid port
+    static RelayRoute parse(String fallbackName, Map<String, Object> data) {
+        String[] listen = hostAndPort(data.get("listen"), "127.0.0.1");
+        String[] origin = hostAndPort(data.get("origin"), "localhost");
+        if (listen == null || origin == null) {
+            return null;
+        }
+        Object name = data.get("name");
+        return new RelayRoute(name != null ? name.toString().trim() : fallbackName, listen[0], Integer.parseInt(listen[1]),
+                origin[0], Integer.parseInt(origin[1]), proxyProtocolVersion(data.get("proxy-protocol")));
+    }
+
+    private static String[] hostAndPort(Object value, String defaultHost) {
+        if (value == null) {
+            return null;
+        }
+        String text = value.toString().trim();
+        int colon = text.lastIndexOf(':');
+        String host = colon > 0 ? text.substring(0, colon) : defaultHost;
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        try {
+            int port = Integer.parseInt(text.substring(colon + 1));
+            return port >= 1 && port <= 65535 ? new String[]{host, String.valueOf(port)} : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // off/false, v1 or v2 (1/2 and true for v1 also accepted)
+    private static int proxyProtocolVersion(Object value) {
+        if (value == null || Boolean.FALSE.equals(value)) {
+            return 0;
+        }
+        if (Boolean.TRUE.equals(value)) {
+            return 1;
+        }
+        switch (value.toString().trim().toLowerCase(Locale.ROOT)) {
+            case "v1":
+            case "1":
+                return 1;
+            case "v2":
+            case "2":
+                return 2;
+            default:
+                return 0;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getListenHost() {
+        return listenHost;
+    }
+
+    public int getListenPort() {
+        return listenPort;
+    }
+
+    public String getOriginHost() {
+        return originHost;
+    }
+
+    public int getOriginPort() {
+        return originPort;
+    }
+
+    // 0 when no PROXY header is sent
+    public int getProxyProtocol() {
+        return proxyProtocol;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RelayRoute)) {
+            return false;
+        }
+        RelayRoute other = (RelayRoute) o;
+        return listenPort == other.listenPort && originPort == other.originPort && proxyProtocol == other.proxyProtocol
+                && name.equals(other.name) && listenHost.equals(other.listenHost) && originHost.equals(other.originHost);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, listenHost, listenPort, originHost, originPort, proxyProtocol);
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + listenHost + ":" + listenPort + " -> " + originHost + ":" + originPort
+                + (proxyProtocol > 0 ? ", PROXY v" + proxyProtocol : "") + ")";
+    }
+}
@@ -0,0 +1,73 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+// On-disk copy of the latest release metadata, with the ETag needed for conditional requests.
+// Only the parsed release (version, asset URLs and the asset->hash index) is kept, so cache hits
+// and 304 replies never need to parse the release again, for any platform asset.
+public class ReleaseCache {
+
+    private final Path dir;
+    private final Path metaFile;
+    private final Properties meta = new Properties();
+    private ReleaseMetadata release;
+
+    public ReleaseCache(Path dir) {
+        this.dir = dir;
+        this.metaFile = dir.resolve("release.properties");
+        if (Files.exists(metaFile)) {
+            try (InputStream in = Files.newInputStream(metaFile)) {
+                meta.load(in);
+                release = ReleaseMetadata.load(meta);
+            } catch (IOException | RuntimeException ignored) {
+                meta.clear(); // Treat an unreadable cache as empty
+            }
+        }
+    }
+
+    public synchronized ReleaseInfo get(String assetName) {
+        return release != null ? release.getRelease(assetName) : null;
+    }
+
+    // Only meaningful while a release is cached; an ETag without its metadata is useless
+    public synchronized String getEtag() {
+        return release != null ? meta.getProperty("etag") : null;
+    }
+
+    public synchronized boolean isFresh(long ttlMillis) {
+        try {
+            long fetchedAt = Long.parseLong(meta.getProperty("fetched-at", "0"));
+            return System.currentTimeMillis() - fetchedAt < ttlMillis;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public synchronized void store(ReleaseMetadata metadata, String etag) throws IOException {
+        meta.clear();
+        if (etag != null) {
+            meta.setProperty("etag", etag);
+        }
+        metadata.store(meta);
+        release = metadata;
+        Files.deleteIfExists(dir.resolve("release.json")); // Raw copy kept by older versions
+        touch();
+    }
+
+    // Marks the cached copy as freshly validated (e.g. after a 304 Not Modified)
+    public synchronized void touch() throws IOException {
+        meta.setProperty("fetched-at", String.valueOf(System.currentTimeMillis()));
+        Files.createDirectories(metaFile.getParent());
+        Path tmp = metaFile.resolveSibling(metaFile.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            meta.store(out, "CloudflaredBridge release metadata cache");
+        }
+        Files.move(tmp, metaFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,59 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.nio.file.Path;
+
+public class ReleaseInfo {
+
+    private final String version;
+    private final String assetName;
+    private final String downloadUrl;
+    private final Path localPath;
+    private final String expectedHash;
+    private final String sourceName;
+
+    public ReleaseInfo(String version, String assetName, String downloadUrl, String expectedHash) {
+        this(version, assetName, downloadUrl, null, expectedHash, "github");
+    }
+
+    public ReleaseInfo(String version, String assetName, String downloadUrl, Path localPath, String expectedHash, String sourceName) {
+        this.version = version;
+        this.assetName = assetName;
+        this.downloadUrl = downloadUrl;
+        this.localPath = localPath;
+        this.expectedHash = expectedHash;
+        this.sourceName = sourceName;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getAssetName() {
+        return assetName;
+    }
+
+    // May be null when the release does not ship this asset or it is served from disk
+    public String getDownloadUrl() {
+        return downloadUrl;
+    }
+
+    // Set when the asset is already available on the local file system
+    public Path getLocalPath() {
+        return localPath;
+    }
+
+    // May be null when the source does not publish a hash for this asset
+    public String getExpectedHash() {
+        return expectedHash;
+    }
+
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    // Name for a release whose source has no version.txt: different builds must not share a versions/
+    // directory, and the same build should be recognised as installed, so it comes from the asset's hash
+    static String versionFromHash(String hash) {
+        return "sha-" + hash.substring(0, 12);
+    }
+}
@@ -0,0 +1,149 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// The parts of a GitHub release we use: its tag, each asset's download URL and the SHA-256 published
+// for it in the release notes. Both maps are built once per fetched release and never change.
+public final class ReleaseMetadata {
+
+    // "cloudflared-linux-amd64: <64 hex>" lines in the release notes
+    private static final Pattern HASH_LINE = Pattern.compile("([\\w.+-]+)[ \\t]*:[ \\t]*([a-fA-F0-9]{64})(?![a-fA-F0-9])");
+
+    private final String version;
+    private final Map<String, String> downloadUrls;
+    private final Map<String, String> hashes;
+
+    private ReleaseMetadata(String version, Map<String, String> downloadUrls, Map<String, String> hashes) {
+        this.version = version;
+        this.downloadUrls = Collections.unmodifiableMap(downloadUrls);
+        this.hashes = Collections.unmodifiableMap(hashes);
+    }
+
+    // Streams the release JSON, keeping only tag_name, body and the assets' names and URLs
+    public static ReleaseMetadata parse(Reader source) throws IOException {
+        String version = null;
+        Map<String, String> downloadUrls = new HashMap<>();
+        Map<String, String> hashes = Collections.emptyMap();
+
+        JsonReader reader = new JsonReader(source);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "tag_name":
+                    version = reader.nextString();
+                    break;
+                case "body":
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                    } else {
+                        hashes = indexHashes(reader.nextString());
+                    }
+                    break;
+                case "assets":
+                    readAssets(reader, downloadUrls);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (version == null) {
+            throw new IOException("Release metadata has no tag_name");
+        }
+        return new ReleaseMetadata(version, downloadUrls, hashes);
+    }
+
+    private static void readAssets(JsonReader reader, Map<String, String> downloadUrls) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String name = null;
+            String url = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String field = reader.nextName();
+                if (field.equals("name") && reader.peek() == JsonToken.STRING) {
+                    name = reader.nextString();
+                } else if (field.equals("browser_download_url") && reader.peek() == JsonToken.STRING) {
+                    url = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (name != null && url != null) {
+                downloadUrls.put(name, url);
+            }
+        }
+        reader.endArray();
+    }
+
+    // One pass over the release notes for every asset's hash
+    public static Map<String, String> indexHashes(CharSequence body) {
+        Map<String, String> hashes = new HashMap<>();
+        Matcher matcher = HASH_LINE.matcher(body);
+        while (matcher.find()) {
+            hashes.putIfAbsent(matcher.group(1), matcher.group(2).toLowerCase(Locale.ROOT));
+        }
+        return hashes;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    // Null when the release does not ship this asset
+    public ReleaseInfo getRelease(String assetName) {
+        String url = downloadUrls.get(assetName);
+        if (url == null) {
+            return null;
+        }
+        return new ReleaseInfo(version, assetName, url, hashes.get(assetName));
+    }
+
+    public Map<String, String> getHashes() {
+        return hashes;
+    }
+
+    void store(Properties props) {
+        props.setProperty("version", version);
+        for (Map.Entry<String, String> entry : downloadUrls.entrySet()) {
+            props.setProperty("asset." + entry.getKey() + ".url", entry.getValue());
+        }
+        for (Map.Entry<String, String> entry : hashes.entrySet()) {
+            props.setProperty("asset." + entry.getKey() + ".sha256", entry.getValue());
+        }
+    }
+
+    // Null if the properties hold no release (empty or written by an older version)
+    static ReleaseMetadata load(Properties props) {
+        String version = props.getProperty("version");
+        if (version == null) {
+            return null;
+        }
+        Map<String, String> downloadUrls = new HashMap<>();
+        Map<String, String> hashes = new HashMap<>();
+        for (String key : props.stringPropertyNames()) {
+            if (key.startsWith("asset.") && key.endsWith(".url")) {
+                downloadUrls.put(key.substring(6, key.length() - 4), props.getProperty(key));
+            } else if (key.startsWith("asset.") && key.endsWith(".sha256")) {
+                hashes.put(key.substring(6, key.length() - 7), props.getProperty(key));
+            }
+        }
+        if (downloadUrls.isEmpty()) {
+            return null;
+        }
+        return new ReleaseMetadata(version, downloadUrls, hashes);
+    }
+}
@@ -0,0 +1,12 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.io.IOException;
+
+// Somewhere cloudflared releases can be obtained from: GitHub, an internal HTTP mirror or a shared directory.
+public interface ReleaseSource {
+
+    String getName();
+
+    // Returns the release to install for the given platform asset, or null if this source does not carry it
+    ReleaseInfo resolve(String assetName) throws IOException;
+}
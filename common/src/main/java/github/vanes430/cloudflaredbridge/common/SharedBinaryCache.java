@@ -0,0 +1,154 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Binary store shared by every CloudflaredBridge instance on the host (all backends and the proxy), with one entry
+// per version and release asset hash. A file lock per entry makes exactly one instance download while the others
+// wait; every instance then hard-links the verified binary into its own versions/ directory, or copies it when the
+// cache lives on another file system.
+public class SharedBinaryCache {
+
+    // FileLock only excludes other processes; instances inside one JVM also need a monitor
+    private static final Map<Path, Object> JVM_LOCKS = new ConcurrentHashMap<>();
+
+    private final Path dir;
+
+    public SharedBinaryCache(Path dir) {
+        this.dir = dir;
+    }
+
+    // Expands a leading ~ to the user's home directory
+    public static Path resolveDir(String configured) {
+        String path = configured.trim();
+        if (path.equals("~") || path.startsWith("~/")) {
+            path = System.getProperty("user.home") + path.substring(1);
+        }
+        return Paths.get(path).toAbsolutePath().normalize();
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    @FunctionalInterface
+    public interface Installer {
+        BinaryInstaller.Result install(Path binary) throws IOException;
+    }
+
+    // Makes sure the cache holds the binary for this version and asset hash, installing it through the installer
+    // if no instance has yet, and links it to target. The result carries the hashes recorded for the cached binary.
+    public BinaryInstaller.Result install(String version, String assetHash, String binaryName, Path target, Installer installer,
+                                          BridgeLogger logger) throws IOException {
+        Path entry = dir.resolve(version.replaceAll("[^A-Za-z0-9._-]", "_")).resolve(assetHash.toLowerCase());
+        Files.createDirectories(entry);
+        Path binary = entry.resolve(binaryName);
+        synchronized (JVM_LOCKS.computeIfAbsent(entry, key -> new Object())) {
+            try (FileChannel channel = FileChannel.open(entry.resolve(".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = channel.tryLock();
+                if (lock == null) {
+                    logger.info("Another server is installing Cloudflared " + version + " into the shared cache. Waiting...");
+                    lock = channel.lock();
+                }
+                try {
+                    HashManifest manifest = new HashManifest(binary);
+                    if (!assetHash.equalsIgnoreCase(manifest.getVerifiedAssetHash())) {
+                        Files.deleteIfExists(binary);
+                        BinaryInstaller.Result result = installer.install(binary);
+                        manifest.record(result.getBinaryHash(), result.getAssetHash());
+                    } else {
+                        logger.info("Using Cloudflared " + version + " from the shared cache in " + dir + ".");
+                    }
+                    link(binary, target);
+                    return new BinaryInstaller.Result(manifest.getVerifiedAssetHash(), manifest.getVerifiedHash());
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    private static void link(Path binary, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, binary);
+        } catch (IOException | UnsupportedOperationException e) {
+            // Different file system (or no hard links): a private copy
+            Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+            Files.copy(binary, tmp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        target.toFile().setExecutable(true);
+    }
+
+    // Removes all but the newest versions. Entries another instance holds locked are left alone; servers that
+    // linked a removed binary keep their copy, since a hard link keeps the data alive.
+    public void prune(int keepVersions, BridgeLogger logger) {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        List<Path> versions = new ArrayList<>();
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(dir, Files::isDirectory)) {
+            dirs.forEach(versions::add);
+        } catch (IOException e) {
+            logger.warning("Could not list the shared Cloudflared cache: " + e.getMessage());
+            return;
+        }
+        versions.sort(Comparator.comparingLong(SharedBinaryCache::lastModified).reversed());
+        for (Path version : versions.subList(Math.min(keepVersions, versions.size()), versions.size())) {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(version, Files::isDirectory)) {
+                for (Path entry : entries) {
+                    deleteEntry(entry);
+                }
+                Files.deleteIfExists(version);
+                logger.info("Removed Cloudflared " + version.getFileName() + " from the shared cache.");
+            } catch (IOException e) {
+                // In use or not ours to delete; try again next time
+            }
+        }
+    }
+
+    private static void deleteEntry(Path entry) throws IOException {
+        synchronized (JVM_LOCKS.computeIfAbsent(entry, key -> new Object())) {
+            try (FileChannel channel = FileChannel.open(entry.resolve(".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = channel.tryLock();
+                if (lock == null) {
+                    throw new IOException("locked");
+                }
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(entry)) {
+                    for (Path file : files) {
+                        if (!file.getFileName().toString().equals(".lock")) {
+                            Files.deleteIfExists(file);
+                        }
+                    }
+                } finally {
+                    lock.release();
+                }
+            }
+            Files.deleteIfExists(entry.resolve(".lock"));
+            Files.deleteIfExists(entry);
+            JVM_LOCKS.remove(entry);
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
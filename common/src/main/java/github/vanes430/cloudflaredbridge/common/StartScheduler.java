@@ -0,0 +1,111 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Paces tunnel launches: a token bucket caps the launch rate, at most `burst` tunnels may be
+// waiting for their first edge connection at once, and a tunnel becoming ready frees its slot
+// and permit immediately. Rate-limit errors from the edge pause all launches with exponential backoff.
+public class StartScheduler {
+
+    private final ScheduledExecutorService executor;
+    private final BridgeLogger logger;
+    private final Consumer<Tunnel> launcher;
+    private final TokenBucket bucket;
+    private final int maxStarting;
+    private final long readyTimeoutNanos;
+    private final long backoffBaseNanos;
+    private final long backoffMaxNanos;
+    private final Deque<Tunnel> queue = new ArrayDeque<>();
+    private final Set<Tunnel> starting = new HashSet<>();
+    private long pausedUntil;
+    private int backoffLevel;
+    private ScheduledFuture<?> wakeup;
+
+    public StartScheduler(ScheduledExecutorService executor, BridgeLogger logger, Consumer<Tunnel> launcher,
+                          int burst, double refillPerSecond, long readyTimeoutSeconds,
+                          long backoffBaseSeconds, long backoffMaxSeconds) {
+        this.executor = executor;
+        this.logger = logger;
+        this.launcher = launcher;
+        this.bucket = new TokenBucket(Math.max(1, burst), Math.max(0.01, refillPerSecond));
+        this.maxStarting = Math.max(1, burst);
+        this.readyTimeoutNanos = TimeUnit.SECONDS.toNanos(Math.max(1, readyTimeoutSeconds));
+        this.backoffBaseNanos = TimeUnit.SECONDS.toNanos(Math.max(1, backoffBaseSeconds));
+        this.backoffMaxNanos = TimeUnit.SECONDS.toNanos(Math.max(backoffBaseSeconds, backoffMaxSeconds));
+    }
+
+    public synchronized void submit(Tunnel tunnel) {
+        tunnel.setStartScheduler(this);
+        queue.add(tunnel);
+        tunnel.getReadyFuture().whenComplete((t, error) -> onSettled(tunnel, error == null));
+        pump();
+    }
+
+    public synchronized void cancel(Tunnel tunnel) {
+        queue.remove(tunnel);
+        starting.remove(tunnel);
+        pump();
+    }
+
+    synchronized void onRateLimited(Tunnel tunnel) {
+        long backoff = Math.min(backoffMaxNanos, backoffBaseNanos << Math.min(backoffLevel, 16));
+        backoffLevel++;
+        pausedUntil = Math.max(pausedUntil, System.nanoTime() + backoff);
+        logger.warning("Edge rate limit hit by " + tunnel.getDisplayName() + ". Pausing further starts for "
+                + TimeUnit.NANOSECONDS.toSeconds(backoff) + "s.");
+    }
+
+    private synchronized void onSettled(Tunnel tunnel, boolean ready) {
+        if (starting.remove(tunnel) && ready) {
+            bucket.refund();
+            backoffLevel = 0;
+        }
+        pump();
+    }
+
+    private synchronized void onReadyTimeout(Tunnel tunnel) {
+        if (starting.remove(tunnel)) {
+            logger.warning(tunnel.getDisplayName() + " did not register a connection within "
+                    + TimeUnit.NANOSECONDS.toSeconds(readyTimeoutNanos) + "s. Continuing with the next tunnel.");
+            pump();
+        }
+    }
+
+    private void pump() {
+        while (!queue.isEmpty() && starting.size() < maxStarting) {
+            long now = System.nanoTime();
+            if (now < pausedUntil) {
+                scheduleWakeup(pausedUntil - now);
+                return;
+            }
+            long wait = bucket.tryAcquire();
+            if (wait > 0) {
+                scheduleWakeup(wait);
+                return;
+            }
+
+            Tunnel tunnel = queue.poll();
+            starting.add(tunnel);
+            executor.execute(() -> launcher.accept(tunnel));
+            executor.schedule(() -> onReadyTimeout(tunnel), readyTimeoutNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void scheduleWakeup(long delayNanos) {
+        if (wakeup != null && !wakeup.isDone()) {
+            return;
+        }
+        wakeup = executor.schedule(() -> {
+            synchronized (this) {
+                pump();
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,51 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.util.concurrent.TimeUnit;
+
+public class TokenBucket {
+
+    private final double capacity;
+    private final double refillPerNano;
+    private double available;
+    private long lastRefill;
+
+    public TokenBucket(int burst, double refillPerSecond) {
+        if (burst < 1) {
+            throw new IllegalArgumentException("burst must be at least 1");
+        }
+        if (refillPerSecond <= 0) {
+            throw new IllegalArgumentException("refillPerSecond must be positive");
+        }
+        this.capacity = burst;
+        this.refillPerNano = refillPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.available = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    // Takes one permit if available and returns 0, otherwise returns the nanos until one will be
+    public synchronized long tryAcquire() {
+        refill();
+        if (available >= 1) {
+            available -= 1;
+            return 0L;
+        }
+        return (long) Math.ceil((1 - available) / refillPerNano);
+    }
+
+    // Gives a permit back, e.g. when the work it paced finished early
+    public synchronized void refund() {
+        refill();
+        available = Math.min(capacity, available + 1);
+    }
+
+    public synchronized double getAvailable() {
+        refill();
+        return available;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        available = Math.min(capacity, available + (now - lastRefill) * refillPerNano);
+        lastRefill = now;
+    }
+}
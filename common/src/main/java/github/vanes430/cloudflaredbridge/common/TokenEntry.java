@@ -0,0 +1,38 @@
+package github.vanes430.cloudflaredbridge.common;
+
+// One tokenlist entry: a tunnel token, how many connectors (replicas) to run for it and the launch
+// profile they use. Written either as a plain token string or as a map with "token" and optional
+// "replicas" and "profile".
+public class TokenEntry {
+
+    private final String token;
+    private final int replicas;
+    private final String profile;
+
+    public TokenEntry(String token, int replicas) {
+        this(token, replicas, null);
+    }
+
+    public TokenEntry(String token, int replicas, String profile) {
+        this.token = token;
+        this.replicas = Math.max(1, replicas);
+        this.profile = profile;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public int getReplicas() {
+        return replicas;
+    }
+
+    // Profile name from the tokenlist, or null for the default profile
+    public String getProfile() {
+        return profile;
+    }
+
+    TokenEntry withReplicas(int replicas) {
+        return new TokenEntry(token, replicas, profile);
+    }
+}
@@ -0,0 +1,339 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class Tunnel {
+
+    private final String token;
+    private final int index;
+    private final int replica;
+    private final String name;
+    private final LogRingBuffer logBuffer;
+    private final TunnelMetrics metrics = new TunnelMetrics();
+    private final ProcessUsage usage = new ProcessUsage();
+    private final long requestedAt = System.nanoTime();
+    private final CompletableFuture<Tunnel> launchFuture = new CompletableFuture<>();
+    private final CompletableFuture<Tunnel> readyFuture = new CompletableFuture<>();
+    private final AtomicInteger connectionMask = new AtomicInteger();
+    private final AtomicInteger rateLimitCount = new AtomicInteger();
+    private final AtomicInteger restartCount = new AtomicInteger();
+    private final Deque<Long> recentFailures = new ArrayDeque<>();
+    private int consecutiveFailures;
+    private volatile TunnelState state = TunnelState.QUEUED;
+    private volatile Process process;
+    private volatile long launchedAt;
+    private volatile long readyAt;
+    private volatile long downSince;
+    private volatile long totalDowntimeNanos;
+    private volatile long lastRecoveryNanos = -1;
+    private volatile String location;
+    private volatile String protocol;
+    private volatile StartScheduler startScheduler;
+    private volatile String version;
+    private volatile String cpus;
+    private volatile LaunchProfile profile;
+    private volatile Path logFile;
+    private volatile boolean adopted;
+
+    public Tunnel(String token, int index, int replica, int logBufferLines) {
+        this.token = token;
+        this.index = index;
+        this.replica = replica;
+        this.name = "tunnel-" + index + (replica > 1 ? "#" + replica : "");
+        this.logBuffer = new LogRingBuffer(logBufferLines);
+    }
+
+    // Replacement process for the same tunnel (rolling upgrade); keeps its name, log history and counters
+    Tunnel(Tunnel replaced) {
+        this.token = replaced.token;
+        this.index = replaced.index;
+        this.replica = replaced.replica;
+        this.name = replaced.name;
+        this.logBuffer = replaced.logBuffer;
+        this.restartCount.set(replaced.restartCount.get());
+        this.totalDowntimeNanos = replaced.totalDowntimeNanos;
+        this.lastRecoveryNanos = replaced.lastRecoveryNanos;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    // Connector number among the processes running for this token, starting at 1
+    public int getReplica() {
+        return replica;
+    }
+
+    // Identifies this replica among all running processes
+    public String getKey() {
+        return replicaKey(token, replica);
+    }
+
+    static String replicaKey(String token, int replica) {
+        return token + "#" + replica;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Short, log-safe identifier for the token (never print the full token)
+    public String getFingerprint() {
+        return "..." + (token.length() > 5 ? token.substring(token.length() - 5) : token);
+    }
+
+    public String getDisplayName() {
+        return name + " (" + getFingerprint() + ")";
+    }
+
+    public LogRingBuffer getLogBuffer() {
+        return logBuffer;
+    }
+
+    public TunnelMetrics getMetrics() {
+        return metrics;
+    }
+
+    public ProcessUsage getUsage() {
+        return usage;
+    }
+
+    public TunnelState getState() {
+        return state;
+    }
+
+    public Process getProcess() {
+        return process;
+    }
+
+    public boolean isAlive() {
+        Process p = process;
+        return p != null && p.isAlive();
+    }
+
+    public CompletableFuture<Tunnel> getLaunchFuture() {
+        return launchFuture;
+    }
+
+    // Completes once cloudflared has registered its first edge connection
+    public CompletableFuture<Tunnel> getReadyFuture() {
+        return readyFuture;
+    }
+
+    // Time from the start request until the process was spawned, or -1 if not launched yet
+    public long getTimeToLaunchMillis() {
+        long launched = launchedAt;
+        return launched == 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(launched - requestedAt);
+    }
+
+    // Time from process spawn until the first registered connection, or -1 if not ready yet
+    public long getTimeToReadyMillis() {
+        long launched = launchedAt;
+        long ready = readyAt;
+        return launched == 0 || ready == 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(ready - launched);
+    }
+
+    public int getActiveConnections() {
+        return Integer.bitCount(connectionMask.get());
+    }
+
+    public int getRateLimitCount() {
+        return rateLimitCount.get();
+    }
+
+    public int getRestartCount() {
+        return restartCount.get();
+    }
+
+    // Total time spent without any edge connection after having served traffic, including the current outage
+    public long getDowntimeMillis() {
+        long down = downSince;
+        long current = down == 0 ? 0 : System.nanoTime() - down;
+        return TimeUnit.NANOSECONDS.toMillis(totalDowntimeNanos + current);
+    }
+
+    // Duration of the most recent outage (disconnect or crash until re-registration), or -1 if none yet
+    public long getLastRecoveryMillis() {
+        long last = lastRecoveryNanos;
+        return last < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(last);
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public String getProtocol() {
+        return protocol;
+    }
+
+    // CPU list the process is pinned to, or null if not pinned
+    public String getCpus() {
+        return cpus;
+    }
+
+    void setCpus(String cpus) {
+        this.cpus = cpus;
+    }
+
+    // Launch profile the current process was started with, or null if not launched yet
+    public LaunchProfile getProfile() {
+        return profile;
+    }
+
+    void setProfile(LaunchProfile profile) {
+        this.profile = profile;
+    }
+
+    // File the current process writes its output to, or null if it goes through a pipe
+    public Path getLogFile() {
+        return logFile;
+    }
+
+    void setLogFile(Path logFile) {
+        this.logFile = logFile;
+    }
+
+    // True if the current process was started by an earlier instance of the plugin and taken over
+    public boolean isAdopted() {
+        return adopted;
+    }
+
+    void markAdopted() {
+        this.adopted = true;
+    }
+
+    // Cloudflared version the current process was started from (null for the unversioned legacy binary)
+    public String getVersion() {
+        return version;
+    }
+
+    void setStartScheduler(StartScheduler startScheduler) {
+        this.startScheduler = startScheduler;
+    }
+
+    void markLaunched(Process process, String version) {
+        this.process = process;
+        this.version = version;
+        this.adopted = false;
+        this.launchedAt = System.nanoTime();
+        this.readyAt = 0; // Time to ready is measured per process; downtime tracking keeps its own timestamps
+        connectionMask.set(0);
+        this.state = TunnelState.STARTING;
+        launchFuture.complete(this);
+    }
+
+    void markFailed(Throwable cause) {
+        state = TunnelState.FAILED;
+        launchFuture.completeExceptionally(cause);
+        readyFuture.completeExceptionally(cause);
+    }
+
+    void markCancelled() {
+        state = TunnelState.STOPPED;
+        launchFuture.cancel(false);
+        readyFuture.cancel(false);
+    }
+
+    void markExited(int exitCode, boolean requested) {
+        connectionMask.set(0);
+        state = requested ? TunnelState.STOPPED : TunnelState.FAILED;
+        if (!requested) {
+            markDown();
+        }
+        readyFuture.completeExceptionally(new IllegalStateException("cloudflared exited with code " + exitCode + " before registering a connection"));
+    }
+
+    void markConnectionRegistered(int connIndex, String location, String protocol) {
+        if (connIndex >= 0 && connIndex < 32) {
+            connectionMask.getAndUpdate(mask -> mask | (1 << connIndex));
+        }
+        if (location != null) {
+            this.location = location;
+        }
+        if (protocol != null) {
+            this.protocol = protocol;
+        }
+        if (state == TunnelState.STARTING || state == TunnelState.DEGRADED) {
+            state = TunnelState.READY;
+        }
+        long now = System.nanoTime();
+        if (readyAt == 0) {
+            readyAt = now;
+        }
+        long down = downSince;
+        if (down != 0) {
+            downSince = 0;
+            lastRecoveryNanos = now - down;
+            totalDowntimeNanos += now - down;
+        }
+        synchronized (recentFailures) {
+            consecutiveFailures = 0;
+        }
+        readyFuture.complete(this);
+    }
+
+    void markConnectionLost(int connIndex) {
+        if (connIndex >= 0 && connIndex < 32) {
+            int remaining = connectionMask.updateAndGet(mask -> mask & ~(1 << connIndex));
+            if (remaining == 0 && state == TunnelState.READY) {
+                state = TunnelState.DEGRADED;
+                markDown();
+            }
+        }
+    }
+
+    void markRestarting() {
+        state = TunnelState.RESTARTING;
+        restartCount.incrementAndGet();
+    }
+
+    void markCrashLooping() {
+        state = TunnelState.CRASH_LOOP;
+    }
+
+    // Records an unexpected exit and returns how many happened within the window, including this one
+    int recordFailure(long windowNanos) {
+        long now = System.nanoTime();
+        synchronized (recentFailures) {
+            consecutiveFailures++;
+            recentFailures.addLast(now);
+            while (!recentFailures.isEmpty() && now - recentFailures.peekFirst() > windowNanos) {
+                recentFailures.removeFirst();
+            }
+            return recentFailures.size();
+        }
+    }
+
+    int getConsecutiveFailures() {
+        synchronized (recentFailures) {
+            return consecutiveFailures;
+        }
+    }
+
+    private void markDown() {
+        if (readyAt != 0 && downSince == 0) {
+            downSince = System.nanoTime();
+        }
+    }
+
+    void markRateLimited() {
+        rateLimitCount.incrementAndGet();
+        StartScheduler scheduler = startScheduler;
+        if (scheduler != null) {
+            scheduler.onRateLimited(this);
+        }
+    }
+
+    void setProtocol(String protocol) {
+        this.protocol = protocol;
+    }
+}
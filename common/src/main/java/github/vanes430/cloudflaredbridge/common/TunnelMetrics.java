@@ -0,0 +1,131 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Latest metrics scraped from one tunnel's cloudflared process, plus per-second rates derived from
+// the previous scrape. Counters restart from zero with the process, so a drop resets the baseline.
+public class TunnelMetrics {
+
+    private final AtomicBoolean scraping = new AtomicBoolean();
+
+    private volatile int port = -1;
+    private volatile boolean available;
+    private volatile long scrapedAtNanos;
+    private volatile double totalRequests;
+    private volatile double requestErrors;
+    private volatile double concurrentRequests;
+    private volatile double haConnections;
+    private volatile double serverErrors;
+    private volatile double bytesSent;
+    private volatile double bytesReceived;
+    private volatile double rttMillis = -1;
+    private volatile double requestsPerSecond;
+    private volatile double errorsPerSecond;
+    private volatile double bytesSentPerSecond;
+    private volatile double bytesReceivedPerSecond;
+
+    public int getPort() {
+        return port;
+    }
+
+    void setPort(int port) {
+        this.port = port;
+        this.available = false;
+    }
+
+    // True once a scrape of the current process has succeeded
+    public boolean isAvailable() {
+        return available;
+    }
+
+    boolean tryBeginScrape() {
+        return scraping.compareAndSet(false, true);
+    }
+
+    void endScrape() {
+        scraping.set(false);
+    }
+
+    synchronized void update(PrometheusTextParser sample, long nowNanos) {
+        if (available && sample.totalRequests >= totalRequests) {
+            double seconds = Math.max(0.001, (nowNanos - scrapedAtNanos) / 1_000_000_000.0);
+            requestsPerSecond = (sample.totalRequests - totalRequests) / seconds;
+            errorsPerSecond = Math.max(0, sample.requestErrors - requestErrors) / seconds;
+            bytesSentPerSecond = Math.max(0, sample.bytesSent - bytesSent) / seconds;
+            bytesReceivedPerSecond = Math.max(0, sample.bytesReceived - bytesReceived) / seconds;
+        } else {
+            requestsPerSecond = 0;
+            errorsPerSecond = 0;
+            bytesSentPerSecond = 0;
+            bytesReceivedPerSecond = 0;
+        }
+        totalRequests = sample.totalRequests;
+        requestErrors = sample.requestErrors;
+        concurrentRequests = sample.concurrentRequests;
+        haConnections = sample.haConnections;
+        serverErrors = sample.serverErrors;
+        bytesSent = sample.bytesSent;
+        bytesReceived = sample.bytesReceived;
+        rttMillis = sample.rttSamples > 0 ? sample.rttSumMillis / sample.rttSamples : -1;
+        scrapedAtNanos = nowNanos;
+        available = true;
+    }
+
+    public long getScrapeAgeMillis() {
+        return available ? (System.nanoTime() - scrapedAtNanos) / 1_000_000 : -1;
+    }
+
+    public double getTotalRequests() {
+        return totalRequests;
+    }
+
+    public double getRequestErrors() {
+        return requestErrors;
+    }
+
+    public double getConcurrentRequests() {
+        return concurrentRequests;
+    }
+
+    public double getHaConnections() {
+        return haConnections;
+    }
+
+    public double getServerErrors() {
+        return serverErrors;
+    }
+
+    public double getBytesSent() {
+        return bytesSent;
+    }
+
+    public double getBytesReceived() {
+        return bytesReceived;
+    }
+
+    // Mean smoothed RTT to the edge over all QUIC connections, or -1 if not reported (e.g. http2)
+    public double getRttMillis() {
+        return rttMillis;
+    }
+
+    public double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    public double getErrorsPerSecond() {
+        return errorsPerSecond;
+    }
+
+    public double getBytesSentPerSecond() {
+        return bytesSentPerSecond;
+    }
+
+    public double getBytesReceivedPerSecond() {
+        return bytesReceivedPerSecond;
+    }
+
+    // Share of all requests so far that failed, in percent
+    public double getErrorRatePercent() {
+        return totalRequests > 0 ? requestErrors * 100.0 / totalRequests : 0;
+    }
+}
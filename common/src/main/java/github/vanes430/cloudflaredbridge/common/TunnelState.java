@@ -0,0 +1,12 @@
+package github.vanes430.cloudflaredbridge.common;
+
+public enum TunnelState {
+    QUEUED,
+    STARTING,
+    READY,
+    DEGRADED,
+    RESTARTING,
+    CRASH_LOOP,
+    STOPPED,
+    FAILED
+}
@@ -0,0 +1,93 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+// Restarts cloudflared processes that exit on their own. Exits are observed through Process.onExit(),
+// restarts are delayed with jittered exponential backoff, and a tunnel that fails too often within the
+// crash-loop window is parked in CRASH_LOOP until it is started again by hand.
+public class TunnelSupervisor {
+
+    private final ScheduledExecutorService executor;
+    private final BridgeLogger logger;
+    private final Predicate<Tunnel> tracked;
+    private final Consumer<Tunnel> restarter;
+    private final Supplier<BridgeConfig> config;
+
+    public TunnelSupervisor(ScheduledExecutorService executor, BridgeLogger logger, Supplier<BridgeConfig> config,
+                            Predicate<Tunnel> tracked, Consumer<Tunnel> restarter) {
+        this.executor = executor;
+        this.logger = logger;
+        this.config = config;
+        this.tracked = tracked;
+        this.restarter = restarter;
+    }
+
+    public void watch(Tunnel tunnel, Process process) {
+        process.onExit().thenAccept(exited -> onExit(tunnel, exited));
+    }
+
+    private void onExit(Tunnel tunnel, Process process) {
+        if (tunnel.getProcess() != process) {
+            return; // Superseded by a newer process
+        }
+
+        boolean requested = !tracked.test(tunnel);
+        int exitCode = process.exitValue();
+        tunnel.markExited(exitCode, requested);
+        if (requested) {
+            return;
+        }
+
+        BridgeConfig config = this.config.get();
+        logger.warning(tunnel.getDisplayName() + " exited unexpectedly with code " + exitCode + ".");
+        if (!config.isSupervisorEnabled()) {
+            return;
+        }
+        retry(tunnel, config);
+    }
+
+    // A restart that could not spawn cloudflared (e.g. the binary went missing) counts as another failure,
+    // so it backs off and can end in CRASH_LOOP instead of dropping the tunnel
+    public void restartFailed(Tunnel tunnel, Throwable cause) {
+        BridgeConfig config = this.config.get();
+        if (!config.isSupervisorEnabled()) {
+            tunnel.markFailed(cause);
+            return;
+        }
+        retry(tunnel, config);
+    }
+
+    private void retry(Tunnel tunnel, BridgeConfig config) {
+        int failures = tunnel.recordFailure(TimeUnit.SECONDS.toNanos(config.getCrashLoopWindowSeconds()));
+        if (failures >= config.getCrashLoopThreshold()) {
+            tunnel.markCrashLooping();
+            logger.severe(tunnel.getDisplayName() + " crashed " + failures + " times within "
+                    + config.getCrashLoopWindowSeconds() + "s. Marked as crash-looping; not restarting. "
+                    + "Check /cloudflared logs " + tunnel.getName() + ".");
+            return;
+        }
+
+        long delayMillis = backoffMillis(tunnel.getConsecutiveFailures(), config);
+        tunnel.markRestarting();
+        logger.info("Restarting " + tunnel.getDisplayName() + " in " + delayMillis + "ms (restart #" + tunnel.getRestartCount() + ").");
+        executor.schedule(() -> {
+            if (tracked.test(tunnel) && tunnel.getState() == TunnelState.RESTARTING) {
+                restarter.accept(tunnel);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Exponential backoff with "equal jitter": half the delay is fixed, the other half random
+    static long backoffMillis(int attempt, BridgeConfig config) {
+        long base = TimeUnit.SECONDS.toMillis(config.getRestartBackoffBaseSeconds());
+        long max = TimeUnit.SECONDS.toMillis(config.getRestartBackoffMaxSeconds());
+        long delay = Math.min(max, base << Math.min(Math.max(0, attempt - 1), 20));
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+}
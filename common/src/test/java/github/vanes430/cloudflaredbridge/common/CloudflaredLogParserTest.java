@@ -0,0 +1,45 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CloudflaredLogParserTest {
+
+    @Test
+    void unregisteredConnectionIsCountedAsLost() {
+        Tunnel tunnel = new Tunnel("token", 1, 1, 10);
+        CloudflaredLogParser parser = new CloudflaredLogParser(tunnel);
+        parser.accept("2024-05-01T12:00:00Z INF Registered tunnel connection connIndex=0 connection=abc event=0 ip=198.41.200.13 location=ams08 protocol=quic");
+        parser.accept("2024-05-01T12:00:00Z INF Registered tunnel connection connIndex=1 connection=def event=0 ip=198.41.200.23 location=ams08 protocol=quic");
+        assertEquals(2, tunnel.getActiveConnections());
+        assertEquals("ams08", tunnel.getLocation());
+
+        parser.accept("2024-05-01T12:01:00Z INF Unregistered tunnel connection connIndex=1 event=0 ip=198.41.200.23");
+        assertEquals(1, tunnel.getActiveConnections());
+    }
+
+    @Test
+    void rateLimitNeedsAStatusCode() {
+        assertTrue(CloudflaredLogParser.isRateLimit("2024-05-01T12:00:00Z ERR Register tunnel error from server side error=\"status=429\" connIndex=0"));
+        assertTrue(CloudflaredLogParser.isRateLimit("2024-05-01T12:00:00Z ERR failed to fetch features: status code: 429"));
+        assertTrue(CloudflaredLogParser.isRateLimit("2024-05-01T12:00:00Z WRN edge returned 429 Too Many Requests"));
+        assertTrue(CloudflaredLogParser.isRateLimit("2024-05-01T12:00:00Z WRN got HTTP 429 from the API"));
+
+        assertFalse(CloudflaredLogParser.isRateLimit("2024-05-01T12:00:00Z WRN Connection terminated connection=4291c0de-3b4a-4c5d-8e9f-0a1b2c3d4e5f connIndex=0"));
+        assertFalse(CloudflaredLogParser.isRateLimit("2024-05-01T12:00:00Z ERR dial tcp 10.0.4.29:34290: connect: connection refused"));
+        assertFalse(CloudflaredLogParser.isRateLimit("2024-05-01T12:00:00Z ERR Serve tunnel error tunnelID=0a1b429c event=1"));
+    }
+
+    @Test
+    void rateLimitedWarningsAreRecorded() {
+        Tunnel tunnel = new Tunnel("token", 1, 1, 10);
+        CloudflaredLogParser parser = new CloudflaredLogParser(tunnel);
+        parser.accept("2024-05-01T12:00:00Z ERR Serve tunnel error error=\"unexpected status=429\" connIndex=0");
+        parser.accept("2024-05-01T12:00:00Z ERR Serve tunnel error ip=198.41.200.429 connIndex=0");
+        parser.accept("2024-05-01T12:00:00Z INF status=429 is only a warning at WRN/ERR");
+        assertEquals(1, tunnel.getRateLimitCount());
+    }
+}
@@ -0,0 +1,39 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DirectoryReleaseSourceTest {
+
+    private static final String HASH = "3f2a9c0d4b5e6f708192a3b4c5d6e7f8091a2b3c4d5e6f708192a3b4c5d6e7f8";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void versionComesFromVersionFile() throws IOException {
+        seed();
+        Files.writeString(dir.resolve("version.txt"), "2024.5.0\n");
+        assertEquals("2024.5.0", new DirectoryReleaseSource(dir).resolve("cloudflared-linux-amd64").getVersion());
+    }
+
+    @Test
+    void versionlessReleaseIsNamedAfterItsHash() throws IOException {
+        seed();
+        assertEquals("sha-3f2a9c0d4b5e", new DirectoryReleaseSource(dir).resolve("cloudflared-linux-amd64").getVersion());
+
+        Files.writeString(dir.resolve("version.txt"), " \n");
+        assertEquals("sha-3f2a9c0d4b5e", new DirectoryReleaseSource(dir).resolve("cloudflared-linux-amd64").getVersion());
+    }
+
+    private void seed() throws IOException {
+        Files.writeString(dir.resolve("sha256sum.txt"), HASH + "  cloudflared-linux-amd64\n");
+        Files.writeString(dir.resolve("cloudflared-linux-amd64"), "binary");
+    }
+}
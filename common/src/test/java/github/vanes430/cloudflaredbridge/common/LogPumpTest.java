@@ -0,0 +1,118 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class LogPumpTest {
+
+    private static final byte[] LINE = "2024-05-01T12:00:00Z ERR Failed to dial a quic connection error=\"timeout\" connIndex=0\n"
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void floodingSourceDoesNotHoldTheRun() {
+        LogPump pump = new LogPump();
+        List<String> flood = new ArrayList<>();
+        List<String> quiet = new ArrayList<>();
+        pump.register(new FakeProcess(new EndlessLines(), true), new EndlessLines(), flood::add);
+        pump.register(new FakeProcess(null, true), new ByteArrayInputStream(LINE), quiet::add);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), pump::run);
+        int firstRun = flood.size();
+        assertTrue(firstRun > 0 && firstRun <= 64 * 1024 / LINE.length + 1, "read " + firstRun + " lines in one run");
+        assertEquals(1, quiet.size());
+
+        pump.run();
+        assertTrue(flood.size() > firstRun);
+        assertEquals(2, pump.getSourceCount());
+    }
+
+    @Test
+    void exitedSourceIsDrainedAndClosed() {
+        LogPump pump = new LogPump();
+        List<String> lines = new ArrayList<>();
+        pump.register(new FakeProcess(null, false), new ByteArrayInputStream("first\nsecond".getBytes(StandardCharsets.UTF_8)), lines::add);
+        pump.run();
+        assertEquals(List.of("first", "second"), lines);
+        assertEquals(0, pump.getSourceCount());
+    }
+
+    // A process that never stops logging, like cloudflared in a reconnect storm
+    private static final class EndlessLines extends InputStream {
+        private int position;
+
+        @Override
+        public int read() {
+            byte b = LINE[position];
+            position = (position + 1) % LINE.length;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            for (int i = 0; i < length; i++) {
+                buffer[offset + i] = (byte) read();
+            }
+            return length;
+        }
+
+        @Override
+        public int available() {
+            return 8192;
+        }
+    }
+
+    private static final class FakeProcess extends Process {
+        private final InputStream out;
+        private final boolean alive;
+
+        private FakeProcess(InputStream out, boolean alive) {
+            this.out = out;
+            this.alive = alive;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return OutputStream.nullOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return out;
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return InputStream.nullInputStream();
+        }
+
+        @Override
+        public int waitFor() {
+            return 0;
+        }
+
+        @Override
+        public int exitValue() {
+            return 0;
+        }
+
+        @Override
+        public void destroy() {
+        }
+
+        @Override
+        public boolean isAlive() {
+            return alive;
+        }
+    }
+}
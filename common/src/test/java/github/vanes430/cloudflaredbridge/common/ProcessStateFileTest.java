@@ -0,0 +1,42 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProcessStateFileTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void savedProcessesLoadBack() throws IOException {
+        ProcessStateFile state = new ProcessStateFile(dir.resolve("processes.state"));
+        state.save(Collections.singletonList(new ProcessStateFile.Entry(4242, 1714564800000L, ProcessStateFile.fingerprint("token"),
+                1, 2, "/srv/cloudflared/versions/2024.5.0/cloudflared", null, "2024.5.0", 20241, null, null, "/srv/cloudflared/logs/tunnel-1-2.log")));
+
+        List<ProcessStateFile.Entry> entries = state.load();
+        assertEquals(1, entries.size());
+        assertEquals(4242, entries.get(0).pid);
+        assertEquals(2, entries.get(0).replica);
+        assertEquals(20241, entries.get(0).metricsPort);
+    }
+
+    @Test
+    void damagedCountLoadsNothing() throws IOException {
+        Path file = dir.resolve("processes.state");
+        Files.writeString(file, "count=two\nprocess.0.pid=4242\n");
+        assertTrue(new ProcessStateFile(file).load().isEmpty());
+
+        Files.writeString(file, "count=1\nprocess.0.pid=\\u00zz\n"); // Malformed escape fails Properties.load
+        assertTrue(new ProcessStateFile(file).load().isEmpty());
+    }
+}
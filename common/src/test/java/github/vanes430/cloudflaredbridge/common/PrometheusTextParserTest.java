@@ -0,0 +1,85 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PrometheusTextParserTest {
+
+    // Trimmed from a cloudflared /metrics page, plus series that share a prefix with the ones we keep
+    private static final String METRICS = String.join("\n",
+            "# HELP cloudflared_tunnel_total_requests Amount of requests proxied through all the tunnels",
+            "# TYPE cloudflared_tunnel_total_requests counter",
+            "cloudflared_tunnel_total_requests 1523",
+            "cloudflared_tunnel_total_requests_created 1.714564800e+09",
+            "cloudflared_tunnel_request_errors 7",
+            "cloudflared_tunnel_concurrent_requests_per_tunnel 3",
+            "cloudflared_tunnel_ha_connections 4",
+            "cloudflared_tunnel_response_by_code{status_code=\"200\"} 1400",
+            "cloudflared_tunnel_response_by_code{status_code=\"502\"} 12",
+            "cloudflared_tunnel_response_by_code{status_code=\"503\"} 3",
+            "quic_client_sent_bytes{conn_index=\"0\"} 1.5e+06",
+            "quic_client_sent_bytes{conn_index=\"1\"} 500000",
+            "quic_client_receive_bytes{conn_index=\"0\"} 2048 1714564800000",
+            "quic_client_smoothed_rtt{conn_index=\"0\"} 20",
+            "quic_client_smoothed_rtt{conn_index=\"1\"} 30",
+            "quic_client_smoothed_rtt{conn_index=\"2\"} NaN-ish",
+            "go_goroutines 88",
+            "");
+
+    @Test
+    void sumsTheReportedSeries() {
+        PrometheusTextParser parser = new PrometheusTextParser();
+        for (String line : METRICS.split("\n")) {
+            parser.accept(line);
+        }
+        assertParsed(parser);
+    }
+
+    @Test
+    void parsesAResponseAsItStreams() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = METRICS.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+            exchange.sendResponseHeaders(200, 0); // Chunked, like the real endpoint
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < body.length; i += 100) {
+                    out.write(body, i, Math.min(100, body.length - i));
+                    out.flush();
+                }
+            }
+        });
+        server.start();
+        try {
+            PrometheusTextParser parser = new PrometheusTextParser();
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/metrics")).build();
+            HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.fromLineSubscriber(parser));
+            assertParsed(parser);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static void assertParsed(PrometheusTextParser parser) {
+        assertEquals(1523, parser.totalRequests);
+        assertEquals(7, parser.requestErrors);
+        assertEquals(3, parser.concurrentRequests);
+        assertEquals(4, parser.haConnections);
+        assertEquals(15, parser.serverErrors);
+        assertEquals(2_000_000, parser.bytesSent);
+        assertEquals(2048, parser.bytesReceived);
+        assertEquals(50, parser.rttSumMillis);
+        assertEquals(2, parser.rttSamples);
+    }
+}
@@ -0,0 +1,157 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Runs the downloader against a local HttpServer standing in for the release host
+class RangeDownloaderTest {
+
+    private static final int CHUNK = 64 * 1024;
+
+    private final byte[] content = new byte[5 * CHUNK + 1234];
+    private final AtomicInteger rangeRequests = new AtomicInteger();
+    // Responses to cut off halfway before the server behaves again
+    private final AtomicInteger truncate = new AtomicInteger();
+    private volatile boolean ranges = true;
+    private HttpServer server;
+    private String url;
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        new Random(42).nextBytes(content);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/cloudflared", this::serve);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/cloudflared";
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        int from = 0;
+        int to = content.length - 1;
+        if (ranges && range != null) {
+            String[] bounds = range.substring("bytes=".length()).split("-");
+            from = Integer.parseInt(bounds[0]);
+            to = Math.min(to, Integer.parseInt(bounds[1]));
+            if (from > 0 || to > 0) {
+                rangeRequests.incrementAndGet(); // Not the probe
+            }
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + content.length);
+        }
+        int length = to - from + 1;
+        // Decided before the headers go out, so a client that has its response cannot race a later truncate.set()
+        boolean cut = length > 1 && truncate.getAndUpdate(n -> Math.max(0, n - 1)) > 0;
+        exchange.getResponseHeaders().set("ETag", "\"v1\"");
+        exchange.sendResponseHeaders(ranges && range != null ? 206 : 200, length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            if (cut) {
+                out.write(content, from, length / 2);
+                out.flush();
+                exchange.close(); // Drops the connection short of the announced length
+                return;
+            }
+            out.write(content, from, length);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private RangeDownloader downloader(int retries) {
+        return new RangeDownloader(3, CHUNK, retries, 2000, 2000);
+    }
+
+    @Test
+    void rangedDownloadFetchesEveryChunk() throws IOException {
+        RangeDownloader.Probe probe = downloader(0).probe(url);
+        assertTrue(probe.supportsRanges());
+        assertEquals(content.length, probe.getSize());
+
+        Path target = dir.resolve("cloudflared.part");
+        downloader(0).download(probe, target);
+        assertArrayEquals(content, Files.readAllBytes(target));
+        assertEquals(6, rangeRequests.get());
+        assertFalse(Files.exists(dir.resolve("cloudflared.part.progress")));
+    }
+
+    @Test
+    void unrangedDownloadUsesASingleStream() throws IOException {
+        ranges = false;
+        RangeDownloader.Probe probe = downloader(0).probe(url);
+        assertFalse(probe.supportsRanges());
+        assertEquals(content.length, probe.getSize());
+
+        Path target = dir.resolve("cloudflared.part");
+        downloader(0).downloadSingle(probe, target);
+        assertArrayEquals(content, Files.readAllBytes(target));
+    }
+
+    @Test
+    void interruptedChunkIsRetried() throws IOException {
+        RangeDownloader.Probe probe = downloader(2).probe(url);
+        truncate.set(1);
+        Path target = dir.resolve("cloudflared.part");
+        downloader(2).download(probe, target);
+        assertArrayEquals(content, Files.readAllBytes(target));
+        assertEquals(7, rangeRequests.get());
+    }
+
+    @Test
+    void interruptedDownloadResumesFromFinishedChunks() throws IOException {
+        RangeDownloader.Probe probe = downloader(0).probe(url);
+        truncate.set(1);
+        Path target = dir.resolve("cloudflared.part");
+        assertThrows(IOException.class, () -> downloader(0).download(probe, target));
+        assertTrue(Files.exists(dir.resolve("cloudflared.part.progress")));
+
+        int before = rangeRequests.get();
+        downloader(0).download(downloader(0).probe(url), target);
+        assertArrayEquals(content, Files.readAllBytes(target));
+        assertTrue(rangeRequests.get() - before < 6, "finished chunks are fetched again");
+    }
+
+    @Test
+    void interruptedUnrangedDownloadStartsOver() throws IOException {
+        ranges = false;
+        RangeDownloader.Probe probe = downloader(1).probe(url);
+        truncate.set(1);
+        Path target = dir.resolve("cloudflared.part");
+        downloader(1).downloadSingle(probe, target);
+        assertArrayEquals(content, Files.readAllBytes(target));
+    }
+
+    @Test
+    void truncatedUnrangedDownloadFailsWithoutRetries() throws IOException {
+        ranges = false;
+        RangeDownloader.Probe probe = downloader(0).probe(url);
+        truncate.set(1);
+        assertThrows(IOException.class, () -> downloader(0).downloadSingle(probe, dir.resolve("cloudflared.part")));
+    }
+}
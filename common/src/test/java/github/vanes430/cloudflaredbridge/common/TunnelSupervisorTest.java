@@ -0,0 +1,51 @@
+package github.vanes430.cloudflaredbridge.common;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TunnelSupervisorTest {
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void failedRestartBacksOffUntilCrashLoop() {
+        BridgeConfig config = BridgeConfig.empty();
+        Tunnel tunnel = new Tunnel("token", 1, 1, 10);
+        TunnelSupervisor supervisor = new TunnelSupervisor(executor, new NoopLogger(), () -> config, t -> true, t -> { });
+
+        tunnel.markRestarting();
+        supervisor.restartFailed(tunnel, new IOException("cloudflared: not found"));
+        assertEquals(TunnelState.RESTARTING, tunnel.getState());
+        assertEquals(1, tunnel.getConsecutiveFailures());
+
+        for (int i = 1; i < config.getCrashLoopThreshold(); i++) {
+            supervisor.restartFailed(tunnel, new IOException("cloudflared: not found"));
+        }
+        assertEquals(TunnelState.CRASH_LOOP, tunnel.getState());
+    }
+
+    private static final class NoopLogger implements BridgeLogger {
+        @Override
+        public void info(String message) {
+        }
+
+        @Override
+        public void warning(String message) {
+        }
+
+        @Override
+        public void severe(String message) {
+        }
+    }
+}
@@ -2,6 +2,7 @@ package github.vanes430.cloudflaredbridge.spigot;
 
 import github.vanes430.cloudflaredbridge.common.BridgeConstants;
 import github.vanes430.cloudflaredbridge.common.CloudflaredManager;
+import org.bukkit.Bukkit;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.nio.file.Paths;
@@ -18,10 +19,8 @@ public class CloudflaredBridgeSpigot extends JavaPlugin {
         // Use 'cloudflared' folder in server root
         manager = new CloudflaredManager(Paths.get("cloudflared"), logger);
         
-        // Initialize async to avoid blocking main thread on network calls
-        new Thread(() -> {
-            manager.init();
-        }).start();
+        // Runs on the manager's own lifecycle thread, off the main and region threads (Folia)
+        manager.init();
 
         getCommand("cloudflared").setExecutor(new CloudflaredCommandSpigot(manager));
     }
@@ -29,7 +28,20 @@ public class CloudflaredBridgeSpigot extends JavaPlugin {
     @Override
     public void onDisable() {
         if (manager != null) {
-            manager.stop();
+            if (manager.getConfig().isKeepRunningOnReload() && !isServerStopping()) {
+                manager.detach(); // Plugin reload: the next instance adopts the running tunnels
+            } else {
+                manager.shutdown();
+            }
+        }
+    }
+
+    // Paper and its forks tell a reload from a stop; elsewhere assume the server is stopping
+    private static boolean isServerStopping() {
+        try {
+            return (Boolean) Bukkit.class.getMethod("isStopping").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return true;
         }
     }
 }
@@ -2,10 +2,15 @@ package github.vanes430.cloudflaredbridge.spigot;
 
 import github.vanes430.cloudflaredbridge.common.BridgeConstants;
 import github.vanes430.cloudflaredbridge.common.CloudflaredManager;
+import github.vanes430.cloudflaredbridge.common.Tunnel;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
 public class CloudflaredCommandSpigot implements CommandExecutor {
 
     private final CloudflaredManager manager;
@@ -22,33 +27,144 @@ public class CloudflaredCommandSpigot implements CommandExecutor {
         }
 
         if (args.length < 1) {
-            sender.sendMessage(BridgeConstants.PREFIX + "Usage: /cloudflared <start|stop>");
+            sender.sendMessage(BridgeConstants.PREFIX + "Usage: /cloudflared <start|stop|restart|reload|upgrade|scale|status|stats|logs>");
             return true;
         }
 
         String sub = args[0].toLowerCase();
         if (sub.equals("start")) {
-            int delay = 10;
+            int burst = manager.getConfig().getStartBurst();
+            double rate = manager.getConfig().getStartRefillPerSecond();
             for (String arg : args) {
-                if (arg.startsWith("--delay=")) {
-                    try {
-                        delay = Integer.parseInt(arg.substring(8));
-                    } catch (NumberFormatException e) {
-                        sender.sendMessage(BridgeConstants.PREFIX + "§cInvalid delay format. Using default 10s.");
+                try {
+                    if (arg.startsWith("--burst=")) {
+                        burst = Integer.parseInt(arg.substring(8));
+                    } else if (arg.startsWith("--rate=")) {
+                        rate = Double.parseDouble(arg.substring(7));
+                    } else if (arg.startsWith("--delay=")) {
+                        rate = 1.0 / Math.max(1, Integer.parseInt(arg.substring(8)));
                     }
+                } catch (NumberFormatException e) {
+                    sender.sendMessage(BridgeConstants.PREFIX + "§cInvalid value in " + arg + ". Using config default.");
                 }
             }
-            final int finalDelay = delay;
-            sender.sendMessage(BridgeConstants.PREFIX + "§eStarting Cloudflared processes (delay=" + finalDelay + "s)...");
-            new Thread(() -> manager.start(finalDelay)).start();
+            final int finalBurst = burst;
+            final double finalRate = rate;
+            sender.sendMessage(BridgeConstants.PREFIX + "§eStarting Cloudflared processes (burst=" + finalBurst + ", rate=" + finalRate + "/s)...");
+            report(sender, manager.start(finalBurst, finalRate).thenApply(tunnels -> {
+                reportLaunches(sender, tunnels);
+                return null;
+            }));
             return true;
         } else if (sub.equals("stop")) {
             sender.sendMessage(BridgeConstants.PREFIX + "§eStopping Cloudflared processes...");
-            new Thread(manager::stop).start();
+            report(sender, manager.stop().thenApply(v -> "§aCloudflared processes stopped."));
+            return true;
+        } else if (sub.equals("reload")) {
+            sender.sendMessage(BridgeConstants.PREFIX + "§eReloading config.yml...");
+            report(sender, manager.reload());
+            return true;
+        } else if (sub.equals("upgrade")) {
+            sender.sendMessage(BridgeConstants.PREFIX + "§eChecking for a new Cloudflared release...");
+            report(sender, manager.checkAndUpgrade().thenApply(summary -> "§a" + summary));
+            return true;
+        } else if (sub.equals("restart")) {
+            if (args.length < 2) {
+                sender.sendMessage(BridgeConstants.PREFIX + "Usage: /cloudflared restart <tunnel>");
+                return true;
+            }
+            sender.sendMessage(BridgeConstants.PREFIX + "§eRestarting " + args[1] + "...");
+            report(sender, manager.restart(args[1]));
+            return true;
+        } else if (sub.equals("scale")) {
+            if (args.length < 3) {
+                sender.sendMessage(BridgeConstants.PREFIX + "Usage: /cloudflared scale <tunnel> <replicas>");
+                return true;
+            }
+            int replicas;
+            try {
+                replicas = Integer.parseInt(args[2]);
+            } catch (NumberFormatException e) {
+                sender.sendMessage(BridgeConstants.PREFIX + "§cInvalid replica count: " + args[2]);
+                return true;
+            }
+            report(sender, manager.scale(args[1], replicas));
+            return true;
+        } else if (sub.equals("logs")) {
+            sendLogs(sender, args);
+            return true;
+        } else if (sub.equals("status")) {
+            List<String> lines = manager.getStatusLines();
+            if (lines.isEmpty()) {
+                sender.sendMessage(BridgeConstants.PREFIX + "§eNo tunnels are running.");
+            }
+            for (String line : lines) {
+                sender.sendMessage(BridgeConstants.PREFIX + line);
+            }
+            return true;
+        } else if (sub.equals("stats")) {
+            List<String> lines = manager.getStatsLines();
+            if (lines.isEmpty()) {
+                sender.sendMessage(BridgeConstants.PREFIX + "§eNo tunnels are running.");
+            }
+            for (String line : lines) {
+                sender.sendMessage(BridgeConstants.PREFIX + line);
+            }
             return true;
         }
 
-        sender.sendMessage(BridgeConstants.PREFIX + "Usage: /cloudflared <start|stop>");
+        sender.sendMessage(BridgeConstants.PREFIX + "Usage: /cloudflared <start|stop|restart|reload|upgrade|scale|status|stats|logs>");
         return true;
     }
+
+    private void sendLogs(CommandSender sender, String[] args) {
+        if (args.length < 2) {
+            sender.sendMessage(BridgeConstants.PREFIX + "Usage: /cloudflared logs <tunnel> [lines]");
+            return;
+        }
+        Tunnel tunnel = manager.findTunnel(args[1]);
+        if (tunnel == null) {
+            sender.sendMessage(BridgeConstants.PREFIX + "§cUnknown tunnel: " + args[1]);
+            return;
+        }
+        int lines = 20;
+        if (args.length > 2) {
+            try {
+                lines = Integer.parseInt(args[2]);
+            } catch (NumberFormatException e) {
+                sender.sendMessage(BridgeConstants.PREFIX + "§cInvalid line count. Using default 20.");
+            }
+        }
+        sender.sendMessage(BridgeConstants.PREFIX + "§eLast " + lines + " line(s) of " + tunnel.getDisplayName() + ":");
+        for (String line : tunnel.getLogBuffer().tail(lines)) {
+            sender.sendMessage("§7" + line);
+        }
+    }
+
+    // Sends the outcome of a lifecycle operation once it completes (null = nothing to report)
+    private void report(CommandSender sender, CompletableFuture<String> result) {
+        result.whenComplete((message, error) -> {
+            if (error != null) {
+                sender.sendMessage(BridgeConstants.PREFIX + "§c" + (error.getCause() != null ? error.getCause().getMessage() : error.getMessage()));
+            } else if (message != null) {
+                sender.sendMessage(BridgeConstants.PREFIX + message);
+            }
+        });
+    }
+
+    private void reportLaunches(CommandSender sender, List<Tunnel> tunnels) {
+        for (Tunnel tunnel : tunnels) {
+            tunnel.getLaunchFuture().thenAccept(t -> sender.sendMessage(BridgeConstants.PREFIX + "§7" + t.getDisplayName() + " launched in " + t.getTimeToLaunchMillis() + "ms"));
+            tunnel.getReadyFuture().whenComplete((t, error) -> {
+                if (error instanceof CancellationException) {
+                    return;
+                }
+                if (error != null) {
+                    sender.sendMessage(BridgeConstants.PREFIX + "§c" + tunnel.getDisplayName() + " failed to become ready: " + error.getMessage());
+                } else {
+                    sender.sendMessage(BridgeConstants.PREFIX + "§a" + t.getDisplayName() + " ready in " + t.getTimeToReadyMillis() + "ms (" + t.getLocation() + ", " + t.getProtocol() + ")");
+                }
+            });
+        }
+    }
 }
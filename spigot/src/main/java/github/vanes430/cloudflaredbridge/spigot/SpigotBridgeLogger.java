@@ -4,6 +4,8 @@ import github.vanes430.cloudflaredbridge.common.BridgeConstants;
 import github.vanes430.cloudflaredbridge.common.BridgeLogger;
 import org.bukkit.Bukkit;
 
+import java.util.List;
+
 public class SpigotBridgeLogger implements BridgeLogger {
     @Override
     public void info(String message) {
@@ -19,4 +21,13 @@ public class SpigotBridgeLogger implements BridgeLogger {
     public void severe(String message) {
         Bukkit.getConsoleSender().sendMessage(BridgeConstants.PREFIX + "§c" + message);
     }
+
+    @Override
+    public void write(List<String> lines) {
+        String[] messages = new String[lines.size()];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = BridgeConstants.PREFIX + lines.get(i);
+        }
+        Bukkit.getConsoleSender().sendMessage(messages);
+    }
 }
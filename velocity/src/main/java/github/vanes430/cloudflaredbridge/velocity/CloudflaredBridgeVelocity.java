@@ -33,8 +33,8 @@ public class CloudflaredBridgeVelocity {
 
         manager = new CloudflaredManager(Paths.get("cloudflared"), logger);
         
-        // Async init
-        server.getScheduler().buildTask(this, manager::init).schedule();
+        // Async init on the manager's lifecycle thread
+        manager.init();
         
         server.getCommandManager().register("cloudflared", new CloudflaredCommandVelocity(manager));
     }
@@ -42,7 +42,7 @@ public class CloudflaredBridgeVelocity {
     @Subscribe
     public void onProxyShutdown(ProxyShutdownEvent event) {
         if (manager != null) {
-            manager.stop();
+            manager.shutdown();
         }
     }
 }
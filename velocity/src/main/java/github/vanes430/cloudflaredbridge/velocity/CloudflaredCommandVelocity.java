@@ -4,9 +4,13 @@ import com.velocitypowered.api.command.SimpleCommand;
 import com.velocitypowered.api.command.CommandSource;
 import github.vanes430.cloudflaredbridge.common.BridgeConstants;
 import github.vanes430.cloudflaredbridge.common.CloudflaredManager;
+import github.vanes430.cloudflaredbridge.common.Tunnel;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
 import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
 
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 
 public class CloudflaredCommandVelocity implements SimpleCommand {
@@ -28,36 +32,140 @@ public class CloudflaredCommandVelocity implements SimpleCommand {
         }
 
         if (args.length < 1) {
-            source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + "Usage: /cloudflared <start|stop>"));
+            source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + "Usage: /cloudflared <start|stop|restart|reload|upgrade|scale|status|stats|logs>"));
             return;
         }
 
         String sub = args[0].toLowerCase();
         if (sub.equals("start")) {
-            int delay = 10;
+            int burst = manager.getConfig().getStartBurst();
+            double rate = manager.getConfig().getStartRefillPerSecond();
             for (String arg : args) {
-                if (arg.startsWith("--delay=")) {
-                    try {
-                        delay = Integer.parseInt(arg.substring(8));
-                    } catch (NumberFormatException e) {
-                        source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + "§cInvalid delay format. Using default 10s."));
+                try {
+                    if (arg.startsWith("--burst=")) {
+                        burst = Integer.parseInt(arg.substring(8));
+                    } else if (arg.startsWith("--rate=")) {
+                        rate = Double.parseDouble(arg.substring(7));
+                    } else if (arg.startsWith("--delay=")) {
+                        rate = 1.0 / Math.max(1, Integer.parseInt(arg.substring(8)));
                     }
+                } catch (NumberFormatException e) {
+                    source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + "§cInvalid value in " + arg + ". Using config default."));
                 }
             }
-            final int finalDelay = delay;
-            source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + "§eStarting Cloudflared processes (delay=" + finalDelay + "s)..."));
-            CompletableFuture.runAsync(() -> manager.start(finalDelay));
+            final int finalBurst = burst;
+            final double finalRate = rate;
+            source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + "§eStarting Cloudflared processes (burst=" + finalBurst + ", rate=" + finalRate + "/s)..."));
+            report(source, manager.start(finalBurst, finalRate).thenApply(tunnels -> {
+                reportLaunches(source, tunnels);
+                return null;
+            }));
         } else if (sub.equals("stop")) {
             source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + "§eStopping Cloudflared processes..."));
-            CompletableFuture.runAsync(manager::stop);
+            report(source, manager.stop().thenApply(v -> "§aCloudflared processes stopped."));
+        } else if (sub.equals("reload")) {
+            source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + "§eReloading config.yml..."));
+            report(source, manager.reload());
+        } else if (sub.equals("upgrade")) {
+            source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + "§eChecking for a new Cloudflared release..."));
+            report(source, manager.checkAndUpgrade().thenApply(summary -> "§a" + summary));
+        } else if (sub.equals("restart")) {
+            if (args.length < 2) {
+                source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + "Usage: /cloudflared restart <tunnel>"));
+                return;
+            }
+            source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + "§eRestarting " + args[1] + "..."));
+            report(source, manager.restart(args[1]));
+        } else if (sub.equals("scale")) {
+            if (args.length < 3) {
+                source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + "Usage: /cloudflared scale <tunnel> <replicas>"));
+                return;
+            }
+            int replicas;
+            try {
+                replicas = Integer.parseInt(args[2]);
+            } catch (NumberFormatException e) {
+                source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + "§cInvalid replica count: " + args[2]));
+                return;
+            }
+            report(source, manager.scale(args[1], replicas));
+        } else if (sub.equals("logs")) {
+            sendLogs(source, args);
+        } else if (sub.equals("status")) {
+            List<String> lines = manager.getStatusLines();
+            if (lines.isEmpty()) {
+                source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + "§eNo tunnels are running."));
+            }
+            for (String line : lines) {
+                source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + line));
+            }
+        } else if (sub.equals("stats")) {
+            List<String> lines = manager.getStatsLines();
+            if (lines.isEmpty()) {
+                source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + "§eNo tunnels are running."));
+            }
+            for (String line : lines) {
+                source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + line));
+            }
         } else {
-             source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + "Usage: /cloudflared <start|stop>"));
+             source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + "Usage: /cloudflared <start|stop|restart|reload|upgrade|scale|status|stats|logs>"));
+        }
+    }
+
+    private void sendLogs(CommandSource source, String[] args) {
+        if (args.length < 2) {
+            source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + "Usage: /cloudflared logs <tunnel> [lines]"));
+            return;
+        }
+        Tunnel tunnel = manager.findTunnel(args[1]);
+        if (tunnel == null) {
+            source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + "§cUnknown tunnel: " + args[1]));
+            return;
+        }
+        int lines = 20;
+        if (args.length > 2) {
+            try {
+                lines = Integer.parseInt(args[2]);
+            } catch (NumberFormatException e) {
+                source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + "§cInvalid line count. Using default 20."));
+            }
+        }
+        source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + "§eLast " + lines + " line(s) of " + tunnel.getDisplayName() + ":"));
+        for (String line : tunnel.getLogBuffer().tail(lines)) {
+            source.sendMessage(Component.text(line, NamedTextColor.GRAY));
+        }
+    }
+
+    // Sends the outcome of a lifecycle operation once it completes (null = nothing to report)
+    private void report(CommandSource source, CompletableFuture<String> result) {
+        result.whenComplete((message, error) -> {
+            if (error != null) {
+                source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + "§c" + (error.getCause() != null ? error.getCause().getMessage() : error.getMessage())));
+            } else if (message != null) {
+                source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + message));
+            }
+        });
+    }
+
+    private void reportLaunches(CommandSource source, List<Tunnel> tunnels) {
+        for (Tunnel tunnel : tunnels) {
+            tunnel.getLaunchFuture().thenAccept(t -> source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + "§7" + t.getDisplayName() + " launched in " + t.getTimeToLaunchMillis() + "ms")));
+            tunnel.getReadyFuture().whenComplete((t, error) -> {
+                if (error instanceof CancellationException) {
+                    return;
+                }
+                if (error != null) {
+                    source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + "§c" + tunnel.getDisplayName() + " failed to become ready: " + error.getMessage()));
+                } else {
+                    source.sendMessage(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + "§a" + t.getDisplayName() + " ready in " + t.getTimeToReadyMillis() + "ms (" + t.getLocation() + ", " + t.getProtocol() + ")"));
+                }
+            });
         }
     }
 
     @Override
     public List<String> suggest(Invocation invocation) {
-        return List.of("start", "stop");
+        return List.of("start", "stop", "restart", "reload", "upgrade", "scale", "status", "stats", "logs");
     }
 
     @Override
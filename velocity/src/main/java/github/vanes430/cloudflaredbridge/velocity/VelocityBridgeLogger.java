@@ -3,8 +3,13 @@ package github.vanes430.cloudflaredbridge.velocity;
 import com.velocitypowered.api.proxy.ProxyServer;
 import github.vanes430.cloudflaredbridge.common.BridgeConstants;
 import github.vanes430.cloudflaredbridge.common.BridgeLogger;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.JoinConfiguration;
 import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class VelocityBridgeLogger implements BridgeLogger {
 
     private final ProxyServer server;
@@ -28,6 +33,16 @@ public class VelocityBridgeLogger implements BridgeLogger {
         log("§c" + message);
     }
 
+    // One console message for the whole batch
+    @Override
+    public void write(List<String> lines) {
+        List<Component> components = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            components.add(LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + line));
+        }
+        server.getConsoleCommandSource().sendMessage(Component.join(JoinConfiguration.newlines(), components));
+    }
+
     private void log(String message) {
         server.getConsoleCommandSource().sendMessage(
             LegacyComponentSerializer.legacySection().deserialize(BridgeConstants.PREFIX + message)